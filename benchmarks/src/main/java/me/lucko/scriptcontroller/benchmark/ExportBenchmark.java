@@ -0,0 +1,161 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.benchmark;
+
+import me.lucko.scriptcontroller.exports.Export;
+import me.lucko.scriptcontroller.exports.ExportRegistry;
+import me.lucko.scriptcontroller.exports.LongExport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading exports from several threads, with and without a
+ * concurrent writer.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportBenchmark {
+    private static final String NAME = "Benchmark-Export";
+
+    private ExportRegistry registry;
+    private Export<Object> export;
+    private Export.Pointer<Object> pointer;
+    private Export<Long> boxedCounter;
+    private LongExport counter;
+
+    @Setup
+    public void setup() {
+        this.registry = ExportRegistry.create();
+        this.export = this.registry.get(NAME);
+        this.export.put(new Object());
+        this.pointer = this.export.pointer();
+        this.boxedCounter = this.registry.get("Benchmark-Boxed-Counter");
+        this.boxedCounter.put(0L);
+        this.counter = this.registry.getLong("Benchmark-Counter");
+    }
+
+    @Benchmark
+    @Group("registryGet")
+    @GroupThreads(4)
+    public Object registryGet() {
+        return this.registry.get(NAME).get();
+    }
+
+    @Benchmark
+    @Group("exportGet")
+    @GroupThreads(4)
+    public Object exportGet() {
+        return this.export.get();
+    }
+
+    @Benchmark
+    @Group("pointerGet")
+    @GroupThreads(4)
+    public Object pointerGet() {
+        return this.pointer.get();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public Object contendedGet() {
+        return this.export.get();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public Export<Object> contendedPut() {
+        return this.export.put(new Object());
+    }
+
+    @Benchmark
+    @Group("computeIfAbsent")
+    @GroupThreads(4)
+    public Object computeIfAbsent() {
+        return this.export.computeIfAbsent(Object::new).get();
+    }
+
+    @Benchmark
+    @Group("contendedClear")
+    @GroupThreads(3)
+    public Object contendedComputeIfAbsent() {
+        return this.export.computeIfAbsent(Object::new).get();
+    }
+
+    @Benchmark
+    @Group("contendedClear")
+    @GroupThreads(1)
+    public void contendedClear() {
+        this.export.clear();
+    }
+
+    @Benchmark
+    @Group("stampedGet")
+    @GroupThreads(4)
+    public Object stampedGet() {
+        return this.export.getStamped();
+    }
+
+    @Benchmark
+    @Group("contendedUpdate")
+    @GroupThreads(4)
+    public Object contendedUpdate() {
+        return this.export.update(v -> new Object());
+    }
+
+    @Benchmark
+    @Group("boxedIncrement")
+    @GroupThreads(4)
+    public Long boxedIncrement() {
+        return this.boxedCounter.update(v -> v + 1);
+    }
+
+    @Benchmark
+    @Group("longIncrement")
+    @GroupThreads(4)
+    public void longIncrement() {
+        this.counter.increment();
+    }
+
+}
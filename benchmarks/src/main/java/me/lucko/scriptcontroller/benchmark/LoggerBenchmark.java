@@ -0,0 +1,149 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.benchmark;
+
+import me.lucko.scriptcontroller.closable.CompositeAutoClosable;
+import me.lucko.scriptcontroller.environment.script.Script;
+import me.lucko.scriptcontroller.logging.ScriptLogger;
+import me.lucko.scriptcontroller.logging.SystemLogger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the formatting of {@link ScriptLogger} messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerBenchmark {
+
+    private ScriptLogger logger;
+    private Object value;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.logger = ScriptLogger.create(new BlackholeLogger(blackhole), new StubScript());
+        this.value = 42;
+    }
+
+    @Benchmark
+    public void singleArgument() {
+        this.logger.info("Hello world");
+    }
+
+    @Benchmark
+    public void multipleArguments() {
+        this.logger.info("Hello", "world", this.value);
+    }
+
+    private static final class BlackholeLogger implements SystemLogger {
+        private final Blackhole blackhole;
+
+        private BlackholeLogger(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void info(String message) {
+            this.blackhole.consume(message);
+        }
+
+        @Override
+        public void warning(String message) {
+            this.blackhole.consume(message);
+        }
+
+        @Override
+        public void severe(String message) {
+            this.blackhole.consume(message);
+        }
+    }
+
+    private static final class StubScript implements Script {
+        private final Path path = Paths.get("benchmark.js");
+        private final CompositeAutoClosable closables = CompositeAutoClosable.create();
+
+        @Override
+        public String getName() {
+            return "benchmark";
+        }
+
+        @Override
+        public Path getPath() {
+            return this.path;
+        }
+
+        @Override
+        public ScriptLogger getLogger() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompositeAutoClosable getClosables() {
+            return this.closables;
+        }
+
+        @Override
+        public Set<Path> getDependencies() {
+            return Collections.singleton(this.path);
+        }
+
+        @Override
+        public void depend(String path) {
+
+        }
+
+        @Override
+        public void depend(Path path) {
+
+        }
+
+        @Override
+        public void close() {
+
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.benchmark;
+
+import me.lucko.scriptcontroller.ScriptController;
+import me.lucko.scriptcontroller.environment.ScriptEnvironment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reloading scripts in a {@link ScriptTree}, from the file being
+ * changed to the reloaded scripts having been run.
+ *
+ * <p>Note that this includes the latency of the filesystem signalling the
+ * change to the loader.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReloadBenchmark {
+
+    @Param({"10", "100"})
+    public int scripts;
+
+    @Param({"1", "5"})
+    public int depth;
+
+    private ScriptTree tree;
+    private ScriptController controller;
+    private ScriptEnvironment environment;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        this.tree = new ScriptTree(this.scripts, this.depth);
+        this.controller = this.tree.createController();
+        this.environment = this.controller.getEnvironments().iterator().next();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.controller.shutdown();
+        this.tree.close();
+    }
+
+    @Benchmark
+    public void singleFile() throws IOException {
+        long target = this.tree.getLoadCounter().get() + 1;
+        this.tree.touchScript(this.next++ % this.tree.getScripts());
+        this.tree.awaitLoads(this.environment, target);
+    }
+
+    @Benchmark
+    public void dependencyCascade() throws IOException {
+        long target = this.tree.getLoadCounter().get() + this.tree.getScripts();
+        this.tree.touchLibrary();
+        this.tree.awaitLoads(this.environment, target);
+    }
+
+}
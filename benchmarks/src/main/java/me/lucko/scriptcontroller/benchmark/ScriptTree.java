@@ -0,0 +1,222 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.benchmark;
+
+import me.lucko.scriptcontroller.ScriptController;
+import me.lucko.scriptcontroller.bindings.BindingsSupplier;
+import me.lucko.scriptcontroller.environment.ScriptEnvironment;
+import me.lucko.scriptcontroller.environment.loader.ScriptLoadingExecutor;
+import me.lucko.scriptcontroller.environment.settings.EnvironmentSettings;
+import me.lucko.scriptcontroller.logging.SystemLogger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A synthetic tree of scripts, used as the workload for loader benchmarks.
+ *
+ * <p>The tree consists of an init script which watches {@code scripts}
+ * scripts, each of which loads a chain of {@code depth} libraries. Every
+ * time a script is run, it increments the {@link #getLoadCounter() load counter}.</p>
+ */
+final class ScriptTree implements AutoCloseable {
+
+    /** A system logger which discards all messages */
+    static final SystemLogger NO_OP_LOGGER = new SystemLogger() {
+        @Override
+        public void info(String message) {
+
+        }
+
+        @Override
+        public void warning(String message) {
+
+        }
+
+        @Override
+        public void severe(String message) {
+
+        }
+    };
+
+    /** A loading executor which never polls - the loader is run manually */
+    private static final ScriptLoadingExecutor MANUAL_EXECUTOR = new ScriptLoadingExecutor() {
+        @Override
+        public AutoCloseable scheduleAtFixedRate(Runnable task, long time, TimeUnit unit) {
+            return () -> {};
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final long RELOAD_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    private final Path directory;
+    private final int scripts;
+    private final int depth;
+    private final AtomicLong loadCounter = new AtomicLong();
+    private int revision = 0;
+
+    ScriptTree(int scripts, int depth) throws IOException {
+        this.directory = Files.createTempDirectory("scriptcontroller-benchmark");
+        this.scripts = scripts;
+        this.depth = depth;
+
+        StringBuilder init = new StringBuilder();
+        for (int i = 0; i < scripts; i++) {
+            init.append("loader.watch('script").append(i).append(".js');\n");
+            writeScript(i);
+        }
+        write("init.js", init.toString());
+
+        for (int i = 0; i < depth; i++) {
+            writeLibrary(i);
+        }
+    }
+
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    public int getScripts() {
+        return this.scripts;
+    }
+
+    public AtomicLong getLoadCounter() {
+        return this.loadCounter;
+    }
+
+    /**
+     * Creates environment settings which bind the load counter, and don't
+     * poll for changes.
+     *
+     * @return the settings
+     */
+    public EnvironmentSettings settings() {
+        return EnvironmentSettings.builder()
+                .loadExecutor(MANUAL_EXECUTOR)
+                .withBindings(BindingsSupplier.singleBinding("loadCounter", this.loadCounter))
+                .build();
+    }
+
+    /**
+     * Creates a controller for the tree, which preloads every script.
+     *
+     * @return the controller
+     */
+    public ScriptController createController() {
+        return ScriptController.builder()
+                .logger(NO_OP_LOGGER)
+                .defaultEnvironmentSettings(settings())
+                .withDirectory(this.directory)
+                .build();
+    }
+
+    /**
+     * Changes the content of a script.
+     *
+     * @param i the index of the script
+     * @throws IOException if the script could not be written
+     */
+    public void touchScript(int i) throws IOException {
+        this.revision++;
+        writeScript(i);
+    }
+
+    /**
+     * Changes the content of the deepest library, which every script
+     * transitively depends on.
+     *
+     * @throws IOException if the library could not be written
+     */
+    public void touchLibrary() throws IOException {
+        this.revision++;
+        writeLibrary(0);
+    }
+
+    /**
+     * Runs the environments loader until the given number of scripts have
+     * been (re)loaded.
+     *
+     * @param environment the environment
+     * @param target the load count to wait for
+     */
+    public void awaitLoads(ScriptEnvironment environment, long target) {
+        long deadline = System.nanoTime() + RELOAD_TIMEOUT;
+        while (this.loadCounter.get() < target) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Timed out waiting for scripts to reload");
+            }
+            environment.getLoader().run();
+        }
+    }
+
+    private void writeScript(int i) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (this.depth > 0) {
+            sb.append("load('lib").append(this.depth - 1).append(".js');\n");
+        }
+        sb.append("loadCounter.incrementAndGet();\n");
+        sb.append("// revision ").append(this.revision).append('\n');
+        write("script" + i + ".js", sb.toString());
+    }
+
+    private void writeLibrary(int i) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (i > 0) {
+            sb.append("load('lib").append(i - 1).append(".js');\n");
+        }
+        sb.append("var lib").append(i).append(" = function() { return ").append(i).append("; };\n");
+        sb.append("// revision ").append(this.revision).append('\n');
+        write("lib" + i + ".js", sb.toString());
+    }
+
+    private void write(String name, String content) throws IOException {
+        Files.write(this.directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    // ignore
+                }
+            });
+        }
+    }
+}
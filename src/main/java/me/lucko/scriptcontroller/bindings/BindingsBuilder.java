@@ -26,6 +26,7 @@
 package me.lucko.scriptcontroller.bindings;
 
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.script.Bindings;
 
@@ -43,7 +44,19 @@ public interface BindingsBuilder {
      * @return a new builder
      */
     static BindingsBuilder wrap(Bindings bindings) {
-        return new BindingsBuilderImpl(bindings);
+        return new BindingsBuilderImpl(bindings, bindings instanceof LazyBindings ? (LazyBindings) bindings : null);
+    }
+
+    /**
+     * Creates a new {@link BindingsBuilder}, which adds
+     * {@link #putLazy(String, Supplier) lazy} bindings to a separate scope.
+     *
+     * @param bindings the bindings to apply to
+     * @param lazyBindings the bindings to add lazy values to
+     * @return a new builder
+     */
+    static BindingsBuilder wrap(Bindings bindings, LazyBindings lazyBindings) {
+        return new BindingsBuilderImpl(bindings, lazyBindings);
     }
 
     /**
@@ -55,6 +68,22 @@ public interface BindingsBuilder {
      */
     BindingsBuilder put(String name, Object object);
 
+    /**
+     * Adds a binding to the builder, whose value is only computed when it is
+     * first read.
+     *
+     * <p>Within an environment, lazy bindings added by
+     * {@link BindingsSupplier#isStatic() static} suppliers are computed at
+     * most once for the environment, and those added by other suppliers at
+     * most once per script. If the builder has no {@link LazyBindings} to
+     * add the binding to, the value is computed immediately.</p>
+     *
+     * @param name the name of the binding
+     * @param supplier the supplier of the value
+     * @return this builder (for chaining)
+     */
+    BindingsBuilder putLazy(String name, Supplier<?> supplier);
+
     /**
      * Applies an action to this builder
      *
@@ -26,14 +26,17 @@
 package me.lucko.scriptcontroller.bindings;
 
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.script.Bindings;
 
 final class BindingsBuilderImpl implements BindingsBuilder {
     private final Bindings bindings;
+    private final LazyBindings lazyBindings;
 
-    BindingsBuilderImpl(Bindings bindings) {
+    BindingsBuilderImpl(Bindings bindings, LazyBindings lazyBindings) {
         this.bindings = bindings;
+        this.lazyBindings = lazyBindings;
     }
 
     @Override
@@ -42,6 +45,15 @@ final class BindingsBuilderImpl implements BindingsBuilder {
         return this;
     }
 
+    @Override
+    public BindingsBuilder putLazy(String name, Supplier<?> supplier) {
+        if (this.lazyBindings == null) {
+            return put(name, supplier.get());
+        }
+        this.lazyBindings.putLazy(name, supplier);
+        return this;
+    }
+
     @Override
     public BindingsBuilder apply(Consumer<Bindings> action) {
         action.accept(this.bindings);
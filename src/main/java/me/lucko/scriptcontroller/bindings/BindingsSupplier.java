@@ -28,9 +28,15 @@ package me.lucko.scriptcontroller.bindings;
 import me.lucko.scriptcontroller.environment.script.Script;
 
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * Supplies a set of bindings for scripts to use at runtime.
+ *
+ * <p>Suppliers are either per-script, and called for every script each time
+ * it is loaded, or {@link #isStatic() static}, and called once per
+ * environment.</p>
  */
 @FunctionalInterface
 public interface BindingsSupplier {
@@ -43,27 +49,56 @@ public interface BindingsSupplier {
      * @return the resultant bindings supplier
      */
     static BindingsSupplier singleBinding(String name, Object value) {
-        return (script, accumulator) -> accumulator.put(name, value);
+        return ofStatic(accumulator -> accumulator.put(name, value));
     }
 
     /**
      * Returns a {@link BindingsSupplier} that encapsulates a map of objects.
      *
+     * <p>The map is read once per environment.</p>
+     *
      * @param map the map of bindings
      * @return the resultant bindings supplier
      */
     static BindingsSupplier ofMap(Map<String, Object> map) {
-        return (script, accumulator) -> {
+        return ofStatic(accumulator -> {
             for (Map.Entry<String, Object> entry : map.entrySet()) {
                 accumulator.put(entry.getKey(), entry.getValue());
             }
-        };
+        });
+    }
+
+    /**
+     * Returns a {@link #isStatic() static} {@link BindingsSupplier}, which
+     * supplies the same bindings to every script.
+     *
+     * @param bindings an action which adds the bindings to the accumulator
+     * @return the resultant bindings supplier
+     */
+    static BindingsSupplier ofStatic(Consumer<BindingsBuilder> bindings) {
+        Objects.requireNonNull(bindings, "bindings");
+        return new StaticBindingsSupplier(bindings);
+    }
+
+    /**
+     * Gets if this supplier supplies the same bindings to every script.
+     *
+     * <p>Static bindings are supplied once per environment, into a scope
+     * shared by all of its scripts, instead of being added to the bindings
+     * of each script. The script passed to {@link #supplyBindings(Script, BindingsBuilder)}
+     * is null.</p>
+     *
+     * @return if the bindings are static
+     */
+    default boolean isStatic() {
+        return false;
     }
 
     /**
      * Supplies this suppliers bindings for the given script.
      *
-     * @param script the script the bindings are for
+     * @param script the script the bindings are for, or null if this
+     *               supplier is {@link #isStatic() static}
      * @param accumulator the accumulator
      */
     void supplyBindings(Script script, BindingsBuilder accumulator);
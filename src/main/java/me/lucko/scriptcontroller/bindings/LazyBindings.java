@@ -0,0 +1,69 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.bindings;
+
+import java.util.function.Supplier;
+
+import javax.script.Bindings;
+
+/**
+ * {@link Bindings} which can hold values that are only computed when they
+ * are first read, and which fall back to a parent scope.
+ *
+ * <p>Lazy values are resolved by {@link #get(Object)}, so are only lazy when
+ * used as a scope which the engine reads through the {@link javax.script.ScriptContext},
+ * e.g. the {@link javax.script.ScriptContext#GLOBAL_SCOPE global scope}.</p>
+ *
+ * <p>Script environments make the global scope visible from the global
+ * object of each script, resolving (and then caching) a name the first time
+ * it is read - so lazy values can also be read from functions which are
+ * called after the script has been evaluated.</p>
+ */
+public interface LazyBindings extends Bindings {
+
+    /**
+     * Creates a new {@link LazyBindings}.
+     *
+     * @param parent the parent scope, used to resolve names which are not
+     *               bound in this scope, or null
+     * @return the new bindings
+     */
+    static LazyBindings create(Bindings parent) {
+        return new LazyBindingsImpl(parent);
+    }
+
+    /**
+     * Adds a binding whose value is computed when it is first read.
+     *
+     * <p>The supplier is called at most once, and the value is then
+     * retained by these bindings.</p>
+     *
+     * @param name the name of the binding
+     * @param supplier the supplier of the value
+     */
+    void putLazy(String name, Supplier<?> supplier);
+
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.bindings;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+final class LazyBindingsImpl extends SimpleBindings implements LazyBindings {
+    private final Bindings parent;
+
+    LazyBindingsImpl(Bindings parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public void putLazy(String name, Supplier<?> supplier) {
+        put(name, new LazyValue(Objects.requireNonNull(supplier, "supplier")));
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object value = super.get(key);
+        if (value instanceof LazyValue) {
+            return ((LazyValue) value).get();
+        }
+        if (value == null && this.parent != null) {
+            return this.parent.get(key);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return super.containsKey(key) || (this.parent != null && this.parent.containsKey(key));
+    }
+
+    private static final class LazyValue {
+        private Supplier<?> supplier;
+        private volatile Object value;
+
+        private LazyValue(Supplier<?> supplier) {
+            this.supplier = supplier;
+        }
+
+        Object get() {
+            Object value = this.value;
+            if (value == null) {
+                synchronized (this) {
+                    value = this.value;
+                    if (value == null) {
+                        value = Objects.requireNonNull(this.supplier.get(), "lazy binding supplied null");
+                        this.value = value;
+                        this.supplier = null;
+                    }
+                }
+            }
+            return value;
+        }
+    }
+}
@@ -26,6 +26,7 @@
 package me.lucko.scriptcontroller.environment;
 
 import me.lucko.scriptcontroller.ScriptController;
+import me.lucko.scriptcontroller.environment.loader.CompiledScriptCache;
 import me.lucko.scriptcontroller.environment.loader.EnvironmentScriptLoader;
 import me.lucko.scriptcontroller.environment.registry.ScriptRegistry;
 import me.lucko.scriptcontroller.environment.settings.EnvironmentSettings;
@@ -71,6 +72,13 @@ public interface ScriptEnvironment extends AutoCloseable {
      */
     EnvironmentScriptLoader getLoader();
 
+    /**
+     * Gets the cache of compiled scripts used by this environment
+     *
+     * @return the compiled script cache
+     */
+    CompiledScriptCache getCompiledScriptCache();
+
     /**
      * Gets the script registry, containing all loaded scripts within this
      * environment
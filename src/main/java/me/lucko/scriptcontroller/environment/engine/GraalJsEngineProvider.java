@@ -0,0 +1,83 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.environment.engine;
+
+import com.oracle.truffle.js.scriptengine.GraalJSScriptEngine;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
+
+import javax.script.ScriptEngine;
+
+/**
+ * Provides GraalJS engines, backed by a shared polyglot {@link Engine}.
+ *
+ * <p>GraalJS is an optional dependency, so the classes referenced here are
+ * only loaded once an engine is first requested.</p>
+ */
+final class GraalJsEngineProvider implements ScriptEngineProvider {
+    static final GraalJsEngineProvider INSTANCE = new GraalJsEngineProvider();
+
+    /** The shared engine, lazily initialised */
+    private volatile Engine engine = null;
+
+    private GraalJsEngineProvider() {
+
+    }
+
+    private Engine getEngine() {
+        Engine engine = this.engine;
+        if (engine == null) {
+            synchronized (this) {
+                engine = this.engine;
+                if (engine == null) {
+                    engine = Engine.newBuilder()
+                            .option("engine.WarnInterpreterOnly", "false")
+                            .build();
+                    this.engine = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    @Override
+    public ScriptEngine createEngine(ClassLoader classLoader) {
+        try {
+            Context.Builder context = Context.newBuilder("js")
+                    .allowHostAccess(HostAccess.ALL)
+                    .allowHostClassLookup(className -> true)
+                    .allowAllAccess(true)
+                    .hostClassLoader(classLoader)
+                    // provides load("nashorn:mozilla_compat.js"), Java.type etc
+                    .option("js.nashorn-compat", "true");
+            return GraalJSScriptEngine.create(getEngine(), context);
+        } catch (NoClassDefFoundError e) {
+            throw new IllegalStateException("GraalJS script engine is not available", e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.environment.engine;
+
+import javax.script.ScriptEngine;
+
+/**
+ * Creates the {@link ScriptEngine} used by an environment.
+ *
+ * <p>Scripts are evaluated using the {@code javax.script} API, and each
+ * script is given its own global scope using
+ * {@link ScriptEngine#createBindings()}. Engines must support the
+ * Nashorn {@code load("nashorn:mozilla_compat.js")} extension, and
+ * {@code Java.type}.</p>
+ */
+@FunctionalInterface
+public interface ScriptEngineProvider {
+
+    /**
+     * Gets a provider for the Nashorn engine.
+     *
+     * <p>This is the default provider.</p>
+     *
+     * @return the nashorn provider
+     */
+    static ScriptEngineProvider nashorn() {
+        return NashornEngineProvider.INSTANCE;
+    }
+
+    /**
+     * Gets a provider for the GraalJS engine.
+     *
+     * <p>GraalJS (the {@code org.graalvm.js:js} and
+     * {@code org.graalvm.js:js-scriptengine} artifacts) must be present on
+     * the classpath. All engines created by the provider share a single
+     * polyglot {@code Engine}, so compiled code is cached between them.
+     * Scripts are run in Nashorn compatibility mode, with full host
+     * access.</p>
+     *
+     * @return the graaljs provider
+     */
+    static ScriptEngineProvider graalJs() {
+        return GraalJsEngineProvider.INSTANCE;
+    }
+
+    /**
+     * Creates a new script engine.
+     *
+     * @param classLoader the class loader scripts should use to look up
+     *                    classes
+     * @return the engine
+     * @throws IllegalStateException if the engine is not available
+     */
+    ScriptEngine createEngine(ClassLoader classLoader);
+
+}
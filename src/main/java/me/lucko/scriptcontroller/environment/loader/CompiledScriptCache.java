@@ -0,0 +1,81 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.environment.loader;
+
+import java.nio.file.Path;
+
+/**
+ * A cache of compiled script units, keyed by the path of the script file and
+ * a digest of its content.
+ *
+ * <p>Scripts which are reloaded without their content changing (for example,
+ * as part of a dependency cascade) re-execute the cached unit, instead of
+ * being parsed and compiled again.</p>
+ */
+public interface CompiledScriptCache {
+
+    /**
+     * Gets the number of compiled units currently held by the cache
+     *
+     * @return the size of the cache
+     */
+    int size();
+
+    /**
+     * Gets the number of lookups which were satisfied by a cached unit
+     *
+     * @return the hit count
+     */
+    long hitCount();
+
+    /**
+     * Gets the number of lookups which required the script to be compiled
+     *
+     * @return the miss count
+     */
+    long missCount();
+
+    /**
+     * Gets the number of units which have been evicted from the cache,
+     * either because the cache was full, or because they were invalidated.
+     *
+     * @return the eviction count
+     */
+    long evictionCount();
+
+    /**
+     * Removes the cached unit for the given path, if one is present.
+     *
+     * @param path the path of the script file
+     */
+    void invalidate(Path path);
+
+    /**
+     * Removes all cached units.
+     */
+    void invalidateAll();
+
+}
@@ -27,10 +27,14 @@ package me.lucko.scriptcontroller.environment.settings;
 
 import me.lucko.scriptcontroller.bindings.BindingsSupplier;
 import me.lucko.scriptcontroller.environment.ScriptEnvironment;
+import me.lucko.scriptcontroller.environment.engine.ScriptEngineProvider;
 import me.lucko.scriptcontroller.environment.loader.ScriptLoadingExecutor;
+import me.lucko.scriptcontroller.exports.ExportRegistry;
 import me.lucko.scriptcontroller.internal.ScriptControllerImpl;
 
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Locale;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
@@ -139,6 +143,102 @@ public interface EnvironmentSettings {
          */
         Builder withDefaultTypeImports(Collection<String> types);
 
+        /**
+         * Define whether the script loader should block on filesystem events,
+         * instead of polling for updates at a fixed {@link #pollRate(long, TimeUnit) rate}.
+         *
+         * <p>When enabled, changes are picked up as soon as they are signalled
+         * by the filesystem (and the {@link #reloadDebounce(long, TimeUnit) quiet period}
+         * has passed), and an idle environment does no work. The load
+         * executor is still used to perform the (re)loading.</p>
+         *
+         * @param eventDriven if loading should be event driven
+         * @return this builder
+         */
+        Builder eventDrivenLoading(boolean eventDriven);
+
+        /**
+         * Define whether exports owned by a script should be kept when the
+         * script is reloaded.
+         *
+         * <p>Exports are always cleared once every script which used them
+         * has been unloaded. By default, they are kept when a script is
+         * reloaded, so state can be carried across reloads (e.g. via
+         * {@link me.lucko.scriptcontroller.exports.Export#computeIfAbsent(java.util.function.Supplier)}).
+         * If not kept, they are also released when a script is reloaded, so
+         * a reloaded script starts from fresh state unless another script
+         * still uses the export.</p>
+         *
+         * <p>Listeners subscribed by a script are removed whenever it is
+         * unloaded or reloaded, either way.</p>
+         *
+         * @param keep if exports should be kept across reloads
+         * @return this builder
+         */
+        Builder keepExportsOnReload(boolean keep);
+
+        /**
+         * Define the locale used to compare export names case-insensitively.
+         *
+         * <p>By default, the default locale of the JVM is used.
+         * {@link Locale#ROOT} can be used to make export names independent
+         * of it.</p>
+         *
+         * @param locale the locale
+         * @return this builder
+         */
+        Builder exportNameLocale(Locale locale);
+
+        /**
+         * Define a file used to persist the environments exports across
+         * restarts.
+         *
+         * <p>If the file exists, exports are {@link ExportRegistry#restore(Path) restored}
+         * from it before any scripts are loaded, and a new
+         * {@link ExportRegistry#snapshot(Path) snapshot} is written when the
+         * environment is closed.</p>
+         *
+         * <p>The path is resolved relative to the environments directory.</p>
+         *
+         * @param file the snapshot file
+         * @return this builder
+         */
+        Builder exportSnapshot(Path file);
+
+        /**
+         * Define the provider used to create the environments script engine.
+         *
+         * <p>By default, {@link ScriptEngineProvider#nashorn() Nashorn} is
+         * used.</p>
+         *
+         * @param provider the engine provider
+         * @return this builder
+         */
+        Builder engineProvider(ScriptEngineProvider provider);
+
+        /**
+         * Define the number of script engines used by the environment.
+         *
+         * <p>Each script is pinned to one of the engines, based on its path.
+         * Scripts pinned to different engines can be evaluated in parallel,
+         * so with engines which are not thread safe (as indicated by the
+         * {@code THREADING} parameter of their factory), this bounds the
+         * number of scripts which can be loaded concurrently.</p>
+         *
+         * <p>The pool only controls how scripts are evaluated. Functions
+         * defined by a script (e.g. callbacks registered with the host
+         * application) are invoked on whichever thread calls them, so the
+         * host must not call into scripts pinned to the same non thread
+         * safe engine from several threads at once.</p>
+         *
+         * <p>By default, one engine is created for each
+         * {@link #preloadParallelism(int) preload thread}.</p>
+         *
+         * @param size the number of engines
+         * @return this builder
+         */
+        Builder enginePoolSize(int size);
+
         /**
          * Define how often the script loader should poll scripts for updates
          *
@@ -148,6 +248,68 @@ public interface EnvironmentSettings {
          */
         Builder pollRate(long time, TimeUnit unit);
 
+        /**
+         * Defines the number of threads used to run scripts during the
+         * initial {@link me.lucko.scriptcontroller.environment.loader.EnvironmentScriptLoader#preload() preload}.
+         *
+         * <p>Scripts discovered in the same pass (i.e. watched by scripts
+         * which have already been run) are run concurrently. A parallelism of
+         * one runs all scripts on the calling thread.</p>
+         *
+         * <p>If the script engine does not declare itself thread safe (via
+         * the {@code THREADING} factory parameter), only scripts pinned to
+         * different engines of the {@link #enginePoolSize(int) pool} are run
+         * concurrently.</p>
+         *
+         * @param parallelism the number of threads
+         * @return this builder
+         */
+        Builder preloadParallelism(int parallelism);
+
+        /**
+         * Defines the maximum number of compiled script units to retain in
+         * the environments {@link me.lucko.scriptcontroller.environment.loader.CompiledScriptCache}.
+         *
+         * <p>A size of zero disables caching.</p>
+         *
+         * @param size the maximum size
+         * @return this builder
+         */
+        Builder compiledScriptCacheSize(int size);
+
+        /**
+         * Define the quiet period the script loader should wait for after a
+         * filesystem change, before (re)loading the affected scripts.
+         *
+         * <p>Bursts of events (e.g. from an editor save, or a git checkout)
+         * are collapsed per path, and processed as a single set of changes
+         * once no further events have occurred for the given period.</p>
+         *
+         * <p>The period is measured from when the loader observes an event,
+         * not from when the file changed. When not using
+         * {@link #eventDrivenLoading(boolean) event driven loading}, events
+         * are only observed each {@link #pollRate(long, TimeUnit) poll}, so
+         * any non-zero period delays reloads by at least one further poll
+         * interval.</p>
+         *
+         * <p>So that a file which changes continuously can't postpone
+         * reloads forever, changes are also processed once ten times the
+         * period has passed since the first of them was observed.</p>
+         *
+         * <p>Defaults to zero when polling, and to 100 milliseconds when using
+         * event driven loading, so that a file is only read once it has been
+         * completely written. With event driven loading and a period of zero,
+         * a script may be loaded whilst it is still being written, and then
+         * again once the write completes, and rewrites which don't change the
+         * content of a script are not skipped.</p>
+         *
+         * @param time the time
+         * @param unit the unit
+         * @return this builder
+         * @throws IllegalArgumentException if time is negative
+         */
+        Builder reloadDebounce(long time, TimeUnit unit);
+
         /**
          * Defines the init script for the environment
          *
@@ -0,0 +1,95 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * A numeric export holding a {@code double}, intended for sums which are
+ * updated frequently from many threads.
+ *
+ * <p>Updates are spread across striped cells, so concurrent writers don't
+ * contend, and values are never boxed.</p>
+ *
+ * <p>Values are accumulated using a function, which is addition unless the
+ * export was obtained with {@link ExportRegistry#getDouble(String, DoubleBinaryOperator, double)}.
+ * Values which are set rather than accumulated (e.g. gauges) should use a
+ * {@link DoubleGauge} instead.</p>
+ *
+ * <p>Listeners registered with the {@link ExportRegistry} are not notified
+ * of changes to numeric exports.</p>
+ */
+public interface DoubleExport {
+
+    /**
+     * Gets the name of the export
+     *
+     * @return the name
+     */
+    String name();
+
+    /**
+     * Accumulates the given value into the export, using the export's
+     * function.
+     *
+     * @param value the value to accumulate
+     */
+    void accumulate(double value);
+
+    /**
+     * Adds the given value to the export.
+     *
+     * <p>Equivalent to {@link #accumulate(double)}.</p>
+     *
+     * @param value the value to add
+     */
+    void add(double value);
+
+    /**
+     * Gets the current value of the export - the result of accumulating
+     * every value since it was last reset.
+     *
+     * <p>The value is not an atomic snapshot - updates made concurrently
+     * with the call may or may not be included.</p>
+     *
+     * @return the current value
+     */
+    double sum();
+
+    /**
+     * Resets the value of the export to its identity, which is zero unless
+     * another was given with the export's function.
+     */
+    void reset();
+
+    /**
+     * Gets the current value of the export, and then resets it.
+     *
+     * @return the value before the reset
+     */
+    double sumThenReset();
+
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * {@link AtomicLong} backed implementation of {@link DoubleGauge}, which
+ * holds the raw bits of the value.
+ */
+final class DoubleGaugeImpl extends RegistryEntry implements DoubleGauge {
+    private final String name;
+    private final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    DoubleGaugeImpl(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String name() {
+        return this.name;
+    }
+
+    @Override
+    public double get() {
+        return Double.longBitsToDouble(this.bits.get());
+    }
+
+    @Override
+    public void set(double value) {
+        this.bits.set(Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public double getAndSet(double value) {
+        return Double.longBitsToDouble(this.bits.getAndSet(Double.doubleToRawLongBits(value)));
+    }
+
+    @Override
+    public boolean compareAndSet(double expected, double value) {
+        long expectedBits = Double.doubleToLongBits(expected);
+        long newBits = Double.doubleToRawLongBits(value);
+        while (true) {
+            // compare canonical bits, so any NaN matches any other
+            long current = this.bits.get();
+            if (Double.doubleToLongBits(Double.longBitsToDouble(current)) != expectedBits) {
+                return false;
+            }
+            if (this.bits.compareAndSet(current, newBits)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public double addAndGet(double delta) {
+        return update(value -> value + delta);
+    }
+
+    @Override
+    public double update(DoubleUnaryOperator function) {
+        while (true) {
+            long current = this.bits.get();
+            double value = function.applyAsDouble(Double.longBitsToDouble(current));
+            if (this.bits.compareAndSet(current, Double.doubleToRawLongBits(value))) {
+                return value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Double.toString(get());
+    }
+}
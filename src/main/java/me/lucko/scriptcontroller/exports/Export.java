@@ -25,7 +25,10 @@
 
 package me.lucko.scriptcontroller.exports;
 
+import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * A namespaced value wrapper.
@@ -44,6 +47,9 @@ public interface Export<T> {
     /**
      * Returns a pointer to this export
      *
+     * <p>The returned pointer is stable, and can be resolved once and then
+     * held onto by callers which read the export frequently.</p>
+     *
      * @return a pointer
      */
     Pointer<T> pointer();
@@ -64,6 +70,26 @@ public interface Export<T> {
      */
     T get(T other);
 
+    /**
+     * Gets the current value of the export, along with its stamp.
+     *
+     * <p>The value and stamp are read atomically.</p>
+     *
+     * @return the current value and stamp
+     */
+    Stamped<T> getStamped();
+
+    /**
+     * Gets the current stamp of the export.
+     *
+     * <p>The stamp is incremented every time the value of the export
+     * changes, so can be used to cheaply check whether the value has
+     * changed since it was last read.</p>
+     *
+     * @return the current stamp
+     */
+    long stamp();
+
     /**
      * Sets the value of the export
      *
@@ -89,6 +115,49 @@ public interface Export<T> {
      */
     Export<T> computeIfAbsent(Supplier<? extends T> other);
 
+    /**
+     * Sets the value of the export, if the current value is
+     * {@link Object#equals(Object) equal} to the expected value.
+     *
+     * <p>The default implementation is built on {@link #get()} and
+     * {@link #put(Object)}, and synchronizes on the export - so is only
+     * atomic with respect to other calls to the default implementations.</p>
+     *
+     * @param expected the expected current value
+     * @param value the value to set
+     * @return true if successful
+     */
+    default boolean compareAndSet(T expected, T value) {
+        synchronized (this) {
+            if (!Objects.equals(get(), expected)) {
+                return false;
+            }
+            put(value);
+            return true;
+        }
+    }
+
+    /**
+     * Atomically updates the value of the export using the given function.
+     *
+     * <p>The function may be called more than once if the export is being
+     * updated concurrently, so should be free of side effects.</p>
+     *
+     * <p>The default implementation is built on {@link #get()} and
+     * {@link #put(Object)}, and synchronizes on the export - so is only
+     * atomic with respect to other calls to the default implementations.</p>
+     *
+     * @param function the update function
+     * @return the updated value
+     */
+    default T update(UnaryOperator<T> function) {
+        synchronized (this) {
+            T value = function.apply(get());
+            put(value);
+            return value;
+        }
+    }
+
     /**
      * Gets if this export has a value
      *
@@ -101,6 +170,83 @@ public interface Export<T> {
      */
     void clear();
 
+    /**
+     * Registers a listener which is called whenever the value of this export
+     * changes.
+     *
+     * <p>The listener is called synchronously, on the thread which changed
+     * the value.</p>
+     *
+     * @param listener the listener
+     * @return an {@link AutoCloseable}, which will unregister the listener when
+     *         {@link AutoCloseable#close() closed}.
+     */
+    default AutoCloseable subscribe(Listener<T> listener) {
+        return subscribe(listener, Runnable::run);
+    }
+
+    /**
+     * Registers a listener which is called whenever the value of this export
+     * changes.
+     *
+     * @param listener the listener
+     * @param executor the executor to call the listener on
+     * @return an {@link AutoCloseable}, which will unregister the listener when
+     *         {@link AutoCloseable#close() closed}.
+     */
+    AutoCloseable subscribe(Listener<T> listener, Executor executor);
+
+    /**
+     * A value of an export, paired with the stamp it was set at.
+     *
+     * @param <T> the type
+     */
+    interface Stamped<T> {
+
+        /**
+         * Gets the value
+         *
+         * @return the value
+         */
+        T value();
+
+        /**
+         * Gets the stamp of the value
+         *
+         * @return the stamp
+         */
+        long stamp();
+
+    }
+
+    /**
+     * Listens for changes to the value of an export.
+     *
+     * <p>e.g.</p>
+     *
+     * <code>
+     *     const subscription = exports.get("example-namespace").subscribe(function(exp, previous, current) {
+     *         logger.info("new value: " + current);
+     *     });
+     *     closableRegistry.bind(subscription);
+     * </code>
+     *
+     * @param <T> the type
+     */
+    @FunctionalInterface
+    interface Listener<T> {
+
+        /**
+         * Called when the value of an export changes.
+         *
+         * @param export the export
+         * @param previous the previous value, or null if there wasn't one
+         * @param current the new value, or null if the export was cleared
+         */
+        void onChange(Export<T> export, T previous, T current);
+
+    }
+
     /**
      * A pointer to the value of an export.
      *
@@ -114,6 +260,11 @@ public interface Export<T> {
      *     someExport().doSomething();
      * </code>
      *
+     * <p>Pointers are resolved handles - reading the value via a pointer
+     * doesn't require the export to be looked up in the registry again.
+     * Java bindings which read an export on a hot path should resolve a
+     * pointer once, and store it in a final field.</p>
+     *
      * @param <T> the type
      */
     interface Pointer<T> extends Supplier<T> {
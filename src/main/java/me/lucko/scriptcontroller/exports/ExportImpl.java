@@ -25,29 +25,61 @@
 
 package me.lucko.scriptcontroller.exports;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * Atomic implementation of {@link Export}.
  *
+ * <p>The value and its stamp are held together in an immutable
+ * {@link State}. Reads are a single volatile load, and writes replace the
+ * state using CAS.</p>
+ *
+ * <p>The export is its own {@link Pointer}, so reads via a pointer don't
+ * go through any wrappers.</p>
+ *
  * @param <T> the type
  */
-final class ExportImpl<T> implements Export<T> {
+final class ExportImpl<T> extends RegistryEntry implements Export<T>, Export.Pointer<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ExportImpl, State> STATE = AtomicReferenceFieldUpdater.newUpdater(ExportImpl.class, State.class, "state");
+
     private final String name;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExportRegistryImpl registry;
+    private final ListenerList<T> listeners = new ListenerList<>();
 
-    private T value = null;
-    private Pointer<T> pointer = null;
+    private volatile State<T> state = new State<>(null, 0);
 
-    ExportImpl(String name) {
+    ExportImpl(String name, ExportRegistryImpl registry) {
         this.name = name;
+        this.registry = registry;
     }
 
-    private Lock readLock() { return this.lock.readLock(); }
-    private Lock writeLock() { return this.lock.writeLock(); }
+    /**
+     * Attempts to replace the current state with a new value.
+     *
+     * @param current the expected current state
+     * @param value the new value
+     * @return true if successful
+     */
+    private boolean replace(State<T> current, T value) {
+        if (!STATE.compareAndSet(this, current, new State<>(value, current.stamp + 1))) {
+            return false;
+        }
+        if (!this.listeners.isEmpty() || !this.registry.getListeners().isEmpty()) {
+            fire(current.value, value);
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fire(T previous, T current) {
+        this.listeners.fire(this, previous, current);
+        this.registry.getListeners().fire((Export<Object>) this, previous, current);
+    }
 
     @Override
     public String name() {
@@ -55,21 +87,13 @@ final class ExportImpl<T> implements Export<T> {
     }
 
     @Override
-    public synchronized Pointer<T> pointer() {
-        if (this.pointer == null) {
-            this.pointer = new PointerImpl<>(this);
-        }
-        return this.pointer;
+    public Pointer<T> pointer() {
+        return this;
     }
 
     @Override
     public T get() {
-        readLock().lock();
-        try {
-            return this.value;
-        } finally {
-            readLock().unlock();
-        }
+        return this.state.value;
     }
 
     @Override
@@ -78,73 +102,120 @@ final class ExportImpl<T> implements Export<T> {
         return value != null ? value : other;
     }
 
+    @Override
+    public Stamped<T> getStamped() {
+        return this.state;
+    }
+
+    @Override
+    public long stamp() {
+        return this.state.stamp;
+    }
+
     @Override
     public Export<T> put(T value) {
-        writeLock().lock();
-        try {
-            this.value = value;
-        } finally {
-            writeLock().unlock();
-        }
+        State<T> current;
+        do {
+            current = this.state;
+        } while (!replace(current, value));
         return this;
     }
 
     @Override
     public Export<T> putIfAbsent(T value) {
-        writeLock().lock();
-        try {
-            if (this.value == null) {
-                this.value = value;
+        State<T> current;
+        do {
+            current = this.state;
+            if (current.value != null) {
+                break;
             }
-        } finally {
-            writeLock().unlock();
-        }
+        } while (!replace(current, value));
         return this;
     }
 
     @Override
     public Export<T> computeIfAbsent(Supplier<? extends T> other) {
-        writeLock().lock();
-        try {
-            if (this.value == null) {
-                this.value = other.get();
+        if (this.state.value != null) {
+            return this;
+        }
+
+        // only one caller should compute the value, so serialise the slow path.
+        // other writes don't take the lock, so the value is still set using CAS.
+        synchronized (this) {
+            if (this.state.value == null) {
+                putIfAbsent(other.get());
             }
-        } finally {
-            writeLock().unlock();
         }
         return this;
     }
 
+    @Override
+    public boolean compareAndSet(T expected, T value) {
+        State<T> current;
+        do {
+            current = this.state;
+            if (!Objects.equals(current.value, expected)) {
+                return false;
+            }
+        } while (!replace(current, value));
+        return true;
+    }
+
+    @Override
+    public T update(UnaryOperator<T> function) {
+        State<T> current;
+        T value;
+        do {
+            current = this.state;
+            value = function.apply(current.value);
+        } while (!replace(current, value));
+        return value;
+    }
+
     @Override
     public boolean containsValue() {
-        readLock().lock();
-        try {
-            return this.value != null;
-        } finally {
-            readLock().unlock();
-        }
+        return this.state.value != null;
     }
 
     @Override
     public void clear() {
-        writeLock().lock();
-        try {
-            this.value = null;
-        } finally {
-            writeLock().unlock();
-        }
+        State<T> current;
+        do {
+            current = this.state;
+            if (current.value == null) {
+                break;
+            }
+        } while (!replace(current, null));
     }
 
-    private static final class PointerImpl<T> implements Pointer<T> {
-        private final Export<T> export;
+    @Override
+    public AutoCloseable subscribe(Listener<T> listener, Executor executor) {
+        return this.listeners.add(listener, executor);
+    }
+
+    @Override
+    boolean isUnused() {
+        // keep exports with listeners, as they may be waiting for a new value
+        return super.isUnused() && this.listeners.isEmpty();
+    }
+
+    private static final class State<T> implements Stamped<T> {
+        private final T value;
+        private final long stamp;
 
-        private PointerImpl(Export<T> export) {
-            this.export = export;
+        private State(T value, long stamp) {
+            this.value = value;
+            this.stamp = stamp;
+        }
+
+        @Override
+        public T value() {
+            return this.value;
         }
 
         @Override
-        public T get() {
-            return this.export.get();
+        public long stamp() {
+            return this.stamp;
         }
     }
 
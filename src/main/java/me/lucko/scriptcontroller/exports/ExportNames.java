@@ -0,0 +1,93 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps export names to their case-insensitive canonical (lower case) form.
+ *
+ * <p>Names which are already in canonical form are returned as-is, and the
+ * canonical forms of other names are cached, so repeated lookups don't
+ * allocate.</p>
+ */
+final class ExportNames {
+
+    /** The maximum number of non-canonical names to cache */
+    private static final int MAX_ALIASES = 1024;
+
+    /** The locale used to convert names to lower case, or null for the default locale */
+    private final Locale locale;
+
+    /** A cache of non-canonical names to their canonical form */
+    private final Map<String, String> aliases = new ConcurrentHashMap<>();
+
+    ExportNames(Locale locale) {
+        this.locale = locale;
+    }
+
+    String canonicalize(String name) {
+        if (isCanonical(name)) {
+            return name;
+        }
+
+        String key = this.aliases.get(name);
+        if (key == null) {
+            key = this.locale == null ? name.toLowerCase() : name.toLowerCase(this.locale);
+
+            // the cache is only cleared if it fills up, which should be rare -
+            // most scripts refer to a small set of names.
+            if (this.aliases.size() >= MAX_ALIASES) {
+                this.aliases.clear();
+            }
+            this.aliases.put(name, key);
+        }
+        return key;
+    }
+
+    /**
+     * Gets if the name contains no characters which could change when it is
+     * converted to lower case.
+     *
+     * @param name the name
+     * @return if the name is canonical
+     */
+    private static boolean isCanonical(String name) {
+        for (int i = 0, len = name.length(); i < len; i++) {
+            char c = name.charAt(i);
+            if (c < 0x80) {
+                if (c >= 'A' && c <= 'Z') {
+                    return false;
+                }
+            } else if (Character.toLowerCase(c) != c || Character.isSurrogate(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -25,7 +25,15 @@
 
 package me.lucko.scriptcontroller.exports;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
 
 /**
  * A registry of {@link Export}s shared between scripts.
@@ -35,16 +43,80 @@ import java.util.Collection;
  *
  * <p>Some scripts will be designed to be totally stateless, and may use exports
  * to store state between invocations.</p>
+ *
+ * <p>Exports can be grouped into {@link #namespace(String) namespaces}, which
+ * prefix the names of their exports with the namespace and a
+ * {@link #SEPARATOR}. Namespaces can be nested, queried and removed in bulk.</p>
  */
-public interface ExportRegistry {
+public interface ExportRegistry extends AutoCloseable {
+
+    /**
+     * The separator between a namespace and the name of an export.
+     */
+    String SEPARATOR = ".";
 
     /**
      * Creates a new standalone {@link ExportRegistry}.
      *
+     * <p>Export names are compared case-insensitively, using the default
+     * locale.</p>
+     *
      * @return a new export registry
      */
     static ExportRegistry create() {
-        return new ExportRegistryImpl();
+        return new ExportRegistryImpl(null);
+    }
+
+    /**
+     * Creates a new standalone {@link ExportRegistry}, which uses the given
+     * locale to compare export names case-insensitively.
+     *
+     * <p>{@link Locale#ROOT} can be used to make the names of exports
+     * independent of the default locale of the JVM.</p>
+     *
+     * @param locale the locale
+     * @return a new export registry
+     */
+    static ExportRegistry create(Locale locale) {
+        return new ExportRegistryImpl(Objects.requireNonNull(locale, "locale"));
+    }
+
+    /**
+     * Creates a new {@link ExportRegistry} backed by a memory-mapped file,
+     * which can be shared with other processes on the same machine.
+     *
+     * <p>The file is divided into a fixed number of slots, one per export
+     * name. Each slot can hold a primitive number or boolean, or a string or
+     * byte array of up to 64 bytes - other values are rejected. Numbers are
+     * read back with the same boxed type they were written with. Numeric
+     * exports share slots with normal exports of the same name.</p>
+     *
+     * <p>Export names are limited to 48 bytes of UTF-8, in their canonical
+     * (lower case) form. Obtaining an export with a longer name throws an
+     * {@link IllegalArgumentException}, and obtaining one with a new name
+     * once every slot is in use throws an {@link IllegalStateException}.</p>
+     *
+     * <p>Slots are never freed, so {@link #remove(String)} and
+     * {@link #removeNamespace(String)} only clear values, and exports are not
+     * {@link #ownedBy(Object) owned}. Listeners are only notified of changes
+     * made by this process.</p>
+     *
+     * <p>Reads are lock-free. Writes take a lock on the slot, which is
+     * shared with other processes.</p>
+     *
+     * <p>Every process must map the file with the same capacity. The file is
+     * unmapped once every registry using it has been {@link #close() closed}.</p>
+     *
+     * @param file the file
+     * @param capacity the maximum number of exports
+     * @return a new export registry
+     * @throws IOException if the file cannot be mapped
+     */
+    static ExportRegistry createMapped(Path file, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        return new MappedExportRegistry(MappedExportFile.open(file, capacity));
     }
 
     /**
@@ -68,13 +140,180 @@ public interface ExportRegistry {
         return this.<T>get(name).pointer();
     }
 
+    /**
+     * Gets a {@code long} export.
+     *
+     * <p>Numeric exports are held separately from normal exports, so may
+     * share a name with an {@link Export}.</p>
+     *
+     * @param name the name of the export
+     * @return the export
+     */
+    LongExport getLong(String name);
+
+    /**
+     * Gets a {@code double} export.
+     *
+     * <p>Numeric exports are held separately from normal exports, so may
+     * share a name with an {@link Export}.</p>
+     *
+     * @param name the name of the export
+     * @return the export
+     */
+    DoubleExport getDouble(String name);
+
+    /**
+     * Gets a {@code long} export which accumulates values using the given
+     * function, e.g. to track a maximum.
+     *
+     * <p>The function should be free of side effects, and the identity
+     * should be the identity of the function (e.g. {@link Long#MIN_VALUE}
+     * for {@link Math#max(long, long)}). If a {@code long} export with the
+     * name already exists, it is returned as is, regardless of the function
+     * it was created with.</p>
+     *
+     * @param name the name of the export
+     * @param function the accumulator function
+     * @param identity the identity of the function
+     * @return the export
+     */
+    LongExport getLong(String name, LongBinaryOperator function, long identity);
+
+    /**
+     * Gets a {@code double} export which accumulates values using the given
+     * function, e.g. to track a maximum.
+     *
+     * <p>The function should be free of side effects, and the identity
+     * should be the identity of the function (e.g.
+     * {@link Double#NEGATIVE_INFINITY} for {@link Math#max(double, double)}).
+     * If a {@code double} export with the name already exists, it is
+     * returned as is, regardless of the function it was created with.</p>
+     *
+     * @param name the name of the export
+     * @param function the accumulator function
+     * @param identity the identity of the function
+     * @return the export
+     */
+    DoubleExport getDouble(String name, DoubleBinaryOperator function, double identity);
+
+    /**
+     * Gets a {@code long} gauge.
+     *
+     * <p>Gauges are held separately from normal and accumulating numeric
+     * exports, so may share a name with them.</p>
+     *
+     * @param name the name of the export
+     * @return the export
+     */
+    LongGauge getLongGauge(String name);
+
+    /**
+     * Gets a {@code double} gauge.
+     *
+     * <p>Gauges are held separately from normal and accumulating numeric
+     * exports, so may share a name with them.</p>
+     *
+     * @param name the name of the export
+     * @return the export
+     */
+    DoubleGauge getDoubleGauge(String name);
+
     /**
      * Deletes an export
      *
+     * <p>Any numeric exports with the same name are reset, and gauges are
+     * set to zero.</p>
+     *
      * @param name the name of the export to remove.
      */
     void remove(String name);
 
+    /**
+     * Gets a view of the exports in the given namespace.
+     *
+     * <p>Exports obtained from the returned registry are named
+     * {@code namespace + SEPARATOR + name} in this registry.</p>
+     *
+     * @param namespace the namespace
+     * @return a registry for the namespace
+     */
+    ExportRegistry namespace(String namespace);
+
+    /**
+     * Removes every export in the given namespace, including those in
+     * nested namespaces.
+     *
+     * <p>Unlike {@link #remove(String)}, the exports are removed from the
+     * registry entirely. Their values are cleared, and any existing
+     * {@link Export}s or {@link Export.Pointer}s to them are detached - a
+     * subsequent {@link #get(String)} with the same name will return a new
+     * export.</p>
+     *
+     * @param namespace the namespace
+     */
+    void removeNamespace(String namespace);
+
+    /**
+     * Gets a view of this registry which records the given owner against
+     * every export obtained through it.
+     *
+     * <p>An export may have many owners. Once all of its owners have been
+     * {@link #release(Object) released}, its value is cleared. Exports
+     * obtained directly from this registry are not owned, and are never
+     * cleared automatically.</p>
+     *
+     * <p>Listeners subscribed through the returned registry, or to the
+     * exports obtained from it, are unsubscribed when the returned registry
+     * is {@link #close() closed}, or the owner is released.</p>
+     *
+     * @param owner the owner, compared using {@link Object#equals(Object)}
+     * @return a registry which records ownership
+     */
+    ExportRegistry ownedBy(Object owner);
+
+    /**
+     * Releases the given owners claim on every export it obtained via
+     * {@link #ownedBy(Object)}.
+     *
+     * <p>Listeners subscribed through the owners views are unsubscribed.
+     * Exports which are left without any owners are cleared, as per
+     * {@link #remove(String)}.</p>
+     *
+     * <p>Released exports which have been obtained directly from this
+     * registry, or which still have listeners, are kept - so handles to them
+     * remain attached to the registry. Other released exports are removed,
+     * so the registry doesn't grow with every name that has been owned.</p>
+     *
+     * @param owner the owner
+     */
+    void release(Object owner);
+
+    /**
+     * Registers a listener which is called whenever the value of any export
+     * in this registry changes.
+     *
+     * <p>The listener is called synchronously, on the thread which changed
+     * the value.</p>
+     *
+     * @param listener the listener
+     * @return an {@link AutoCloseable}, which will unregister the listener when
+     *         {@link AutoCloseable#close() closed}.
+     */
+    default AutoCloseable subscribe(Export.Listener<Object> listener) {
+        return subscribe(listener, Runnable::run);
+    }
+
+    /**
+     * Registers a listener which is called whenever the value of any export
+     * in this registry changes.
+     *
+     * @param listener the listener
+     * @param executor the executor to call the listener on
+     * @return an {@link AutoCloseable}, which will unregister the listener when
+     *         {@link AutoCloseable#close() closed}.
+     */
+    AutoCloseable subscribe(Export.Listener<Object> listener, Executor executor);
+
     /**
      * Returns a collection of all known exports.
      *
@@ -82,4 +321,66 @@ public interface ExportRegistry {
      */
     Collection<Export<?>> getAll();
 
+    /**
+     * Returns a collection of all known exports whose names start with the
+     * given prefix.
+     *
+     * <p>Registries created by {@link #create()} index exports by name, so
+     * this does not scan the whole registry. Registries created by
+     * {@link #createMapped(Path, int)} scan every slot of the file.</p>
+     *
+     * @param prefix the prefix
+     * @return a collection of matching exports
+     */
+    Collection<Export<?>> getAll(String prefix);
+
+    /**
+     * Writes a snapshot of the values of the exports in this registry to
+     * the given file.
+     *
+     * <p>Numbers, booleans, strings, byte arrays and serializable JDK values
+     * and collections of them (e.g. lists, maps, {@link java.math.BigDecimal})
+     * are included. Other values (e.g. script functions) are skipped.</p>
+     *
+     * @param file the file to write to
+     * @throws IOException if an io error occurs
+     */
+    default void snapshot(Path file) throws IOException {
+        ExportSnapshot.write(file, "", getAll(), Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * Restores the values of exports from a snapshot previously written by
+     * {@link #snapshot(Path)}.
+     *
+     * <p>Values in the snapshot replace the current values of the exports.
+     * The value of a long or double export which doesn't exist yet is applied
+     * when it's first obtained, so an accumulator restored from a snapshot
+     * uses the function it's obtained with.</p>
+     *
+     * @param file the file to read from
+     * @return the number of exports restored
+     * @throws IOException if an io error occurs, or the file is not a snapshot
+     */
+    default int restore(Path file) throws IOException {
+        return ExportSnapshot.read(file, this);
+    }
+
+    /**
+     * Closes the registry, releasing any resources held by it.
+     *
+     * <p>Only registries created by {@link #createMapped(Path, int)} hold
+     * resources. Closing a view returned by {@link #ownedBy(Object)}
+     * unsubscribes the listeners subscribed through it - for other
+     * registries (and views such as {@link #namespace(String)}), this does
+     * nothing.</p>
+     *
+     * @throws IOException if an io error occurs
+     */
+    @Override
+    default void close() throws IOException {
+
+    }
+
 }
@@ -25,36 +25,539 @@
 
 package me.lucko.scriptcontroller.exports;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.function.DoubleBinaryOperator;
 import java.util.function.Function;
+import java.util.function.LongBinaryOperator;
 
-final class ExportRegistryImpl implements ExportRegistry, Function<String, Export<?>> {
+final class ExportRegistryImpl implements ExportRegistry, ExportSnapshot.Source, ExportSnapshot.Target, Function<String, Export<?>> {
+    private final ExportNames names;
     private final Map<String, Export<?>> exports = new ConcurrentHashMap<>();
+    private final Map<String, LongExport> longExports = new ConcurrentHashMap<>();
+    private final Map<String, DoubleExport> doubleExports = new ConcurrentHashMap<>();
+    private final Map<String, LongGauge> longGauges = new ConcurrentHashMap<>();
+    private final Map<String, DoubleGauge> doubleGauges = new ConcurrentHashMap<>();
+    private final ListenerList<Object> listeners = new ListenerList<>();
+
+    /**
+     * Values restored from a snapshot for numeric exports which haven't been
+     * created yet. They're applied when the export is first obtained, so it's
+     * created with the function it was asked for.
+     */
+    private final Map<String, Long> restoredLongs = new ConcurrentHashMap<>();
+    private final Map<String, Double> restoredDoubles = new ConcurrentHashMap<>();
+
+    /**
+     * A sorted index of the keys of every export in the registry, used to
+     * answer prefix queries without scanning the lookup maps.
+     */
+    private final NavigableSet<String> keys = new ConcurrentSkipListSet<>();
+
+    /** The owners of each owned export key, guarded by itself */
+    private final Map<String, Set<Object>> owners = new HashMap<>();
+
+    /** The keys claimed by each owner, guarded by {@link #owners} */
+    private final Map<Object, Set<String>> claims = new HashMap<>();
+
+    /** The owned views with subscriptions, by owner, guarded by {@link #owners} */
+    private final Map<Object, Set<OwnedExportRegistry>> views = new HashMap<>();
+
+    ExportRegistryImpl(Locale locale) {
+        this.names = new ExportNames(locale);
+    }
+
+    String key(String name) {
+        return this.names.canonicalize(name);
+    }
 
     @Override
     public Export<?> apply(String s) {
-        return new ExportImpl<>(s);
+        this.keys.add(s);
+        return new ExportImpl<>(s, this);
     }
 
     @Override
     public <T> Export<T> get(String name) {
+        return get(name, true);
+    }
+
+    /**
+     * Gets an export.
+     *
+     * @param name the name of the export
+     * @param pin if the export should be {@link RegistryEntry#pin() pinned}
+     * @param <T> the export type
+     * @return the export
+     */
+    <T> Export<T> get(String name, boolean pin) {
+        String key = key(name);
+
+        // try a plain lookup first, computeIfAbsent may lock even if the key is present
+        Export<?> export = this.exports.get(key);
+        if (export == null) {
+            export = this.exports.computeIfAbsent(key, this);
+        }
+        if (pin) {
+            ((RegistryEntry) export).pin();
+        }
+
         //noinspection unchecked
-        return (Export<T>) this.exports.computeIfAbsent(name.toLowerCase(), this);
+        return (Export<T>) export;
+    }
+
+    @Override
+    public LongExport getLong(String name) {
+        return getLong(name, true);
+    }
+
+    LongExport getLong(String name, boolean pin) {
+        return getNumeric(this.longExports, name, k -> restored(new LongExportImpl(k)), pin);
+    }
+
+    @Override
+    public DoubleExport getDouble(String name) {
+        return getDouble(name, true);
+    }
+
+    DoubleExport getDouble(String name, boolean pin) {
+        return getNumeric(this.doubleExports, name, k -> restored(new DoubleExportImpl(k)), pin);
+    }
+
+    @Override
+    public LongExport getLong(String name, LongBinaryOperator function, long identity) {
+        return getLong(name, function, identity, true);
+    }
+
+    LongExport getLong(String name, LongBinaryOperator function, long identity, boolean pin) {
+        return getNumeric(this.longExports, name, k -> restored(new LongAccumulatorExportImpl(k, function, identity)), pin);
+    }
+
+    @Override
+    public DoubleExport getDouble(String name, DoubleBinaryOperator function, double identity) {
+        return getDouble(name, function, identity, true);
+    }
+
+    DoubleExport getDouble(String name, DoubleBinaryOperator function, double identity, boolean pin) {
+        return getNumeric(this.doubleExports, name, k -> restored(new DoubleAccumulatorExportImpl(k, function, identity)), pin);
+    }
+
+    @Override
+    public LongGauge getLongGauge(String name) {
+        return getLongGauge(name, true);
+    }
+
+    LongGauge getLongGauge(String name, boolean pin) {
+        return getNumeric(this.longGauges, name, LongGaugeImpl::new, pin);
+    }
+
+    @Override
+    public DoubleGauge getDoubleGauge(String name) {
+        return getDoubleGauge(name, true);
+    }
+
+    DoubleGauge getDoubleGauge(String name, boolean pin) {
+        return getNumeric(this.doubleGauges, name, DoubleGaugeImpl::new, pin);
+    }
+
+    private <E> E getNumeric(Map<String, E> map, String name, Function<String, E> constructor, boolean pin) {
+        String key = key(name);
+
+        E export = map.get(key);
+        if (export == null) {
+            export = map.computeIfAbsent(key, k -> {
+                this.keys.add(k);
+                return constructor.apply(k);
+            });
+        }
+        if (pin) {
+            ((RegistryEntry) export).pin();
+        }
+        return export;
+    }
+
+    private LongExport restored(LongExport export) {
+        Long value = this.restoredLongs.remove(export.name());
+        if (value != null) {
+            export.accumulate(value);
+        }
+        return export;
+    }
+
+    private DoubleExport restored(DoubleExport export) {
+        Double value = this.restoredDoubles.remove(export.name());
+        if (value != null) {
+            export.accumulate(value);
+        }
+        return export;
+    }
+
+    @Override
+    public void restore(String name, Object value) {
+        // restored exports aren't pinned, so they can still be removed when
+        // their owner is released
+        get(name, false).put(value);
+    }
+
+    @Override
+    public void restoreLong(String name, long value) {
+        // computed under the map's lock for the key, so the value is either
+        // applied to the export, or seen when the export is created
+        this.longExports.compute(key(name), (k, export) -> {
+            if (export == null) {
+                this.keys.add(k);
+                this.restoredLongs.put(k, value);
+            } else {
+                export.reset();
+                export.accumulate(value);
+            }
+            return export;
+        });
+    }
+
+    @Override
+    public void restoreDouble(String name, double value) {
+        this.doubleExports.compute(key(name), (k, export) -> {
+            if (export == null) {
+                this.keys.add(k);
+                this.restoredDoubles.put(k, value);
+            } else {
+                export.reset();
+                export.accumulate(value);
+            }
+            return export;
+        });
+    }
+
+    @Override
+    public void restoreLongGauge(String name, long value) {
+        getLongGauge(name, false).set(value);
+    }
+
+    @Override
+    public void restoreDoubleGauge(String name, double value) {
+        getDoubleGauge(name, false).set(value);
     }
 
     @Override
     public void remove(String name) {
-        Export<?> export = this.exports.get(name.toLowerCase());
+        clearKey(key(name));
+    }
+
+    @Override
+    public ExportRegistry namespace(String namespace) {
+        return new NamespacedExportRegistry(this, key(namespace) + SEPARATOR);
+    }
+
+    @Override
+    public void removeNamespace(String namespace) {
+        removeAll(key(namespace) + SEPARATOR);
+    }
+
+    void removeAll(String prefix) {
+        for (String key : range(prefix)) {
+            removeKey(key);
+        }
+    }
+
+    private void clearKey(String key) {
+        this.restoredLongs.remove(key);
+        this.restoredDoubles.remove(key);
+
+        Export<?> export = this.exports.get(key);
+        if (export != null) {
+            export.clear();
+        }
+        LongExport longExport = this.longExports.get(key);
+        if (longExport != null) {
+            longExport.reset();
+        }
+        DoubleExport doubleExport = this.doubleExports.get(key);
+        if (doubleExport != null) {
+            doubleExport.reset();
+        }
+        LongGauge longGauge = this.longGauges.get(key);
+        if (longGauge != null) {
+            longGauge.set(0);
+        }
+        DoubleGauge doubleGauge = this.doubleGauges.get(key);
+        if (doubleGauge != null) {
+            doubleGauge.set(0);
+        }
+    }
+
+    private void removeKey(String key) {
+        // remove from the index first, so an export created concurrently
+        // after the map removal below is indexed again.
+        this.keys.remove(key);
+        this.restoredLongs.remove(key);
+        this.restoredDoubles.remove(key);
+
+        Export<?> export = this.exports.remove(key);
         if (export != null) {
             export.clear();
         }
+        LongExport longExport = this.longExports.remove(key);
+        if (longExport != null) {
+            longExport.reset();
+        }
+        DoubleExport doubleExport = this.doubleExports.remove(key);
+        if (doubleExport != null) {
+            doubleExport.reset();
+        }
+        LongGauge longGauge = this.longGauges.remove(key);
+        if (longGauge != null) {
+            longGauge.set(0);
+        }
+        DoubleGauge doubleGauge = this.doubleGauges.remove(key);
+        if (doubleGauge != null) {
+            doubleGauge.set(0);
+        }
+    }
+
+    @Override
+    public ExportRegistry ownedBy(Object owner) {
+        return new OwnedExportRegistry(this, owner);
+    }
+
+    /**
+     * Records the owner against the given key.
+     *
+     * <p>Ownership must be claimed before the export is obtained, so that
+     * a concurrent {@link #release(Object)} can't clear it in between.</p>
+     *
+     * @param key the export key
+     * @param owner the owner
+     */
+    void claim(String key, Object owner) {
+        synchronized (this.owners) {
+            this.owners.computeIfAbsent(key, k -> new HashSet<>()).add(owner);
+            this.claims.computeIfAbsent(owner, o -> new HashSet<>()).add(key);
+        }
+    }
+
+    /**
+     * Records that the given view has subscriptions, which should be closed
+     * when its owner is released.
+     *
+     * @param owner the owner
+     * @param view the view
+     */
+    void register(Object owner, OwnedExportRegistry view) {
+        synchronized (this.owners) {
+            this.views.computeIfAbsent(owner, o -> new HashSet<>()).add(view);
+        }
+    }
+
+    /**
+     * Removes a view recorded by {@link #register(Object, OwnedExportRegistry)}.
+     *
+     * @param owner the owner
+     * @param view the view
+     */
+    void unregister(Object owner, OwnedExportRegistry view) {
+        synchronized (this.owners) {
+            Set<OwnedExportRegistry> views = this.views.get(owner);
+            if (views != null && views.remove(view) && views.isEmpty()) {
+                this.views.remove(owner);
+            }
+        }
+    }
+
+    @Override
+    public void release(Object owner) {
+        Set<OwnedExportRegistry> views;
+        List<String> released = new ArrayList<>();
+        synchronized (this.owners) {
+            views = this.views.remove(owner);
+
+            Set<String> keys = this.claims.remove(owner);
+            if (keys != null) {
+                for (String key : keys) {
+                    Set<Object> owners = this.owners.get(key);
+                    if (owners == null || !owners.remove(owner) || !owners.isEmpty()) {
+                        continue;
+                    }
+                    this.owners.remove(key);
+                    released.add(key);
+                }
+            }
+        }
+
+        // unsubscribe the owners listeners first, so they aren't notified
+        // of their own exports being cleared.
+        if (views != null) {
+            for (OwnedExportRegistry view : views) {
+                view.unsubscribeAll();
+            }
+        }
+
+        // clear outside of the lock, as clearing notifies listeners, which
+        // may call back into the registry.
+        for (String key : released) {
+            synchronized (this.owners) {
+                // claimed again since being released
+                if (this.owners.containsKey(key)) {
+                    continue;
+                }
+            }
+
+            clearKey(key);
+
+            synchronized (this.owners) {
+                // an owner claims a key before obtaining the export, so holding
+                // the lock means a new owner can't be handed the removed export.
+                if (!this.owners.containsKey(key)) {
+                    removeUnused(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the exports with the given key which are
+     * {@link RegistryEntry#isUnused() unused}, so the registry doesn't grow
+     * with every name that has ever been owned.
+     *
+     * @param key the key
+     */
+    private void removeUnused(String key) {
+        removeUnused(this.exports, key);
+        removeUnused(this.longExports, key);
+        removeUnused(this.doubleExports, key);
+        removeUnused(this.longGauges, key);
+        removeUnused(this.doubleGauges, key);
+
+        if (!isPresent(key)) {
+            this.keys.remove(key);
+
+            // created concurrently since the check above
+            if (isPresent(key)) {
+                this.keys.add(key);
+            }
+        }
+    }
+
+    private static <E> void removeUnused(Map<String, E> map, String key) {
+        E export = map.get(key);
+        if (export == null || !((RegistryEntry) export).isUnused() || !map.remove(key, export)) {
+            return;
+        }
+
+        // pinned or subscribed to concurrently with the removal
+        if (!((RegistryEntry) export).isUnused()) {
+            map.putIfAbsent(key, export);
+        }
+    }
+
+    private boolean isPresent(String key) {
+        return this.exports.containsKey(key) || this.longExports.containsKey(key) || this.doubleExports.containsKey(key)
+                || this.longGauges.containsKey(key) || this.doubleGauges.containsKey(key)
+                || this.restoredLongs.containsKey(key) || this.restoredDoubles.containsKey(key);
+    }
+
+    private NavigableSet<String> range(String prefix) {
+        return this.keys.subSet(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    @Override
+    public AutoCloseable subscribe(Export.Listener<Object> listener, Executor executor) {
+        return this.listeners.add(listener, executor);
+    }
+
+    ListenerList<Object> getListeners() {
+        return this.listeners;
     }
 
     @Override
     public Collection<Export<?>> getAll() {
+        for (Export<?> export : this.exports.values()) {
+            ((RegistryEntry) export).pin();
+        }
         return Collections.unmodifiableCollection(this.exports.values());
     }
+
+    @Override
+    public void snapshot(Path file) throws IOException {
+        snapshot(file, "");
+    }
+
+    @Override
+    public void snapshot(Path file, String prefix) throws IOException {
+        List<Export<?>> exports = new ArrayList<>();
+        List<LongExport> longExports = new ArrayList<>();
+        List<DoubleExport> doubleExports = new ArrayList<>();
+        List<LongGauge> longGauges = new ArrayList<>();
+        List<DoubleGauge> doubleGauges = new ArrayList<>();
+        for (String key : range(prefix)) {
+            Export<?> export = this.exports.get(key);
+            if (export != null) {
+                exports.add(export);
+            }
+            LongExport longExport = this.longExports.get(key);
+            if (longExport != null) {
+                longExports.add(longExport);
+            }
+            DoubleExport doubleExport = this.doubleExports.get(key);
+            if (doubleExport != null) {
+                doubleExports.add(doubleExport);
+            }
+
+            // restored values which haven't been applied yet
+            Long restoredLong = this.restoredLongs.get(key);
+            if (restoredLong != null) {
+                LongExport pending = new LongExportImpl(key);
+                pending.add(restoredLong);
+                longExports.add(pending);
+            }
+            Double restoredDouble = this.restoredDoubles.get(key);
+            if (restoredDouble != null) {
+                DoubleExport pending = new DoubleExportImpl(key);
+                pending.add(restoredDouble);
+                doubleExports.add(pending);
+            }
+
+            LongGauge longGauge = this.longGauges.get(key);
+            if (longGauge != null) {
+                longGauges.add(longGauge);
+            }
+            DoubleGauge doubleGauge = this.doubleGauges.get(key);
+            if (doubleGauge != null) {
+                doubleGauges.add(doubleGauge);
+            }
+        }
+        ExportSnapshot.write(file, prefix, exports, longExports, doubleExports, longGauges, doubleGauges);
+    }
+
+    @Override
+    public Collection<Export<?>> getAll(String prefix) {
+        return Collections.unmodifiableList(getAll(prefix, true));
+    }
+
+    List<Export<?>> getAll(String prefix, boolean pin) {
+        List<Export<?>> exports = new ArrayList<>();
+        for (String key : range(key(prefix))) {
+            Export<?> export = this.exports.get(key);
+            if (export != null) {
+                if (pin) {
+                    ((RegistryEntry) export).pin();
+                }
+                exports.add(export);
+            }
+        }
+        return exports;
+    }
 }
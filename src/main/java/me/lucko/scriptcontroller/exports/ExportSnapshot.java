@@ -0,0 +1,473 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads and writes snapshots of export values.
+ *
+ * <p>The format is a sequence of tagged entries. Common value types are
+ * written directly, and other {@link Serializable} values using Java
+ * serialization. Values which can't be written are skipped.</p>
+ *
+ * <p>Serialized values may only contain the JDK value and collection types
+ * in {@link #SERIALIZABLE_CLASSES}, which is checked both when a snapshot
+ * is written and when it is read, so a snapshot file can't be used to
+ * instantiate arbitrary classes.</p>
+ */
+final class ExportSnapshot {
+    private ExportSnapshot() {}
+
+    private static final int MAGIC = 0x53435853; // SCXS
+    private static final int FORMAT_VERSION = 1;
+
+    // entry tags
+    private static final byte END = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte STRING = 5;
+    private static final byte BYTES = 6;
+    private static final byte SERIALIZED = 7;
+    private static final byte LONG_EXPORT = 8;
+    private static final byte DOUBLE_EXPORT = 9;
+    private static final byte LONG_GAUGE = 10;
+    private static final byte DOUBLE_GAUGE = 11;
+
+    /** The classes which may appear in a serialized value */
+    private static final Set<String> SERIALIZABLE_CLASSES = new HashSet<>(Arrays.asList(
+            "java.lang.Number",
+            "java.lang.Byte",
+            "java.lang.Short",
+            "java.lang.Integer",
+            "java.lang.Long",
+            "java.lang.Float",
+            "java.lang.Double",
+            "java.lang.Boolean",
+            "java.lang.Character",
+            "java.lang.String",
+            "java.math.BigInteger",
+            "java.math.BigDecimal",
+            "java.util.UUID",
+            "java.util.ArrayList",
+            "java.util.LinkedList",
+            "java.util.ArrayDeque",
+            "java.util.HashMap",
+            "java.util.LinkedHashMap",
+            "java.util.TreeMap",
+            "java.util.HashSet",
+            "java.util.LinkedHashSet",
+            "java.util.TreeSet",
+            "java.util.Arrays$ArrayList",
+            "java.util.Collections$EmptyList",
+            "java.util.Collections$EmptyMap",
+            "java.util.Collections$EmptySet",
+            "java.util.Collections$SingletonList",
+            "java.util.Collections$SingletonMap",
+            "java.util.Collections$SingletonSet",
+            "java.util.Collections$UnmodifiableCollection",
+            "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableRandomAccessList",
+            "java.util.Collections$UnmodifiableMap",
+            "java.util.Collections$UnmodifiableSet"
+    ));
+
+    private static boolean isSerializable(String className) {
+        if (className.startsWith("[")) {
+            // arrays of primitives, or of an allowed class
+            String component = className.substring(className.lastIndexOf('[') + 1);
+            return component.length() == 1 || (component.startsWith("L") && component.endsWith(";")
+                    && isSerializable(component.substring(1, component.length() - 1)));
+        }
+        return SERIALIZABLE_CLASSES.contains(className);
+    }
+
+    /**
+     * A registry which can write a snapshot of the exports under a prefix,
+     * including its numeric exports and gauges.
+     */
+    interface Source {
+
+        /**
+         * Writes a snapshot of the exports with keys starting with the
+         * given prefix, with the prefix stripped from their names.
+         *
+         * @param file the file
+         * @param prefix the key prefix
+         * @throws IOException if an io error occurs
+         */
+        void snapshot(Path file, String prefix) throws IOException;
+    }
+
+    /**
+     * A registry which entries from a snapshot can be restored into.
+     */
+    interface Target {
+
+        /**
+         * Restores the value of an export.
+         *
+         * @param name the name of the export
+         * @param value the value
+         */
+        void restore(String name, Object value);
+
+        /**
+         * Restores the value of a long export. The export may not have been
+         * created yet, in which case the function it accumulates with isn't
+         * known.
+         *
+         * @param name the name of the export
+         * @param value the value
+         */
+        void restoreLong(String name, long value);
+
+        /**
+         * Restores the value of a double export. The export may not have been
+         * created yet, in which case the function it accumulates with isn't
+         * known.
+         *
+         * @param name the name of the export
+         * @param value the value
+         */
+        void restoreDouble(String name, double value);
+
+        /**
+         * Restores the value of a long gauge.
+         *
+         * @param name the name of the gauge
+         * @param value the value
+         */
+        void restoreLongGauge(String name, long value);
+
+        /**
+         * Restores the value of a double gauge.
+         *
+         * @param name the name of the gauge
+         * @param value the value
+         */
+        void restoreDoubleGauge(String name, double value);
+    }
+
+    /**
+     * Gets the {@link Target} to restore entries into the given registry.
+     *
+     * @param registry the registry
+     * @return the target
+     */
+    static Target target(ExportRegistry registry) {
+        if (registry instanceof Target) {
+            return (Target) registry;
+        }
+        return new RegistryTarget(registry);
+    }
+
+    /**
+     * Restores entries through the public methods of a registry. Numeric
+     * exports are created with the default function, so a registry which
+     * can restore them lazily should implement {@link Target} itself.
+     */
+    private static final class RegistryTarget implements Target {
+        private final ExportRegistry registry;
+
+        RegistryTarget(ExportRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public void restore(String name, Object value) {
+            this.registry.get(name).put(value);
+        }
+
+        @Override
+        public void restoreLong(String name, long value) {
+            LongExport export = this.registry.getLong(name);
+            export.reset();
+            export.add(value);
+        }
+
+        @Override
+        public void restoreDouble(String name, double value) {
+            DoubleExport export = this.registry.getDouble(name);
+            export.reset();
+            export.add(value);
+        }
+
+        @Override
+        public void restoreLongGauge(String name, long value) {
+            this.registry.getLongGauge(name).set(value);
+        }
+
+        @Override
+        public void restoreDoubleGauge(String name, double value) {
+            this.registry.getDoubleGauge(name).set(value);
+        }
+    }
+
+    /**
+     * Writes a snapshot to the given file.
+     *
+     * <p>The snapshot is written to a temporary file first, and then moved
+     * into place, so an existing snapshot is never left half written.</p>
+     *
+     * @param file the file
+     * @param prefix a prefix to strip from the names of the exports
+     * @param exports the exports
+     * @param longExports the long exports
+     * @param doubleExports the double exports
+     * @param longGauges the long gauges
+     * @param doubleGauges the double gauges
+     * @throws IOException if an io error occurs
+     */
+    static void write(Path file, String prefix, Collection<Export<?>> exports, Collection<? extends LongExport> longExports, Collection<? extends DoubleExport> doubleExports,
+                      Collection<? extends LongGauge> longGauges, Collection<? extends DoubleGauge> doubleGauges) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(FORMAT_VERSION);
+
+                for (Export<?> export : exports) {
+                    writeValue(out, export.name().substring(prefix.length()), export.get());
+                }
+                for (LongExport export : longExports) {
+                    out.writeByte(LONG_EXPORT);
+                    out.writeUTF(export.name().substring(prefix.length()));
+                    out.writeLong(export.sum());
+                }
+                for (DoubleExport export : doubleExports) {
+                    out.writeByte(DOUBLE_EXPORT);
+                    out.writeUTF(export.name().substring(prefix.length()));
+                    out.writeDouble(export.sum());
+                }
+                for (LongGauge gauge : longGauges) {
+                    out.writeByte(LONG_GAUGE);
+                    out.writeUTF(gauge.name().substring(prefix.length()));
+                    out.writeLong(gauge.get());
+                }
+                for (DoubleGauge gauge : doubleGauges) {
+                    out.writeByte(DOUBLE_GAUGE);
+                    out.writeUTF(gauge.name().substring(prefix.length()));
+                    out.writeDouble(gauge.get());
+                }
+                out.writeByte(END);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, String name, Object value) throws IOException {
+        if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeUTF(name);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeUTF(name);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeUTF(name);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeUTF(name);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF(name);
+            writeBytes(out, ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            out.writeUTF(name);
+            writeBytes(out, (byte[]) value);
+        } else if (value instanceof Serializable) {
+            // serialize separately, so a failure (or a class which isn't
+            // allowed) doesn't corrupt the snapshot
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new FilteredObjectOutputStream(bytes)) {
+                objectOut.writeObject(value);
+            } catch (IOException e) {
+                return;
+            }
+            out.writeByte(SERIALIZED);
+            out.writeUTF(name);
+            writeBytes(out, bytes.toByteArray());
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a snapshot from the given file into a registry.
+     *
+     * @param file the file
+     * @param registry the registry to restore the exports into
+     * @return the number of exports restored
+     * @throws IOException if an io error occurs, or the file is not a snapshot
+     */
+    static int read(Path file, ExportRegistry registry) throws IOException {
+        Target target = target(registry);
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                throw new IOException("Unrecognised export snapshot format: " + file);
+            }
+
+            byte tag;
+            while ((tag = in.readByte()) != END) {
+                String name = in.readUTF();
+                switch (tag) {
+                    case INT:
+                        target.restore(name, in.readInt());
+                        break;
+                    case LONG:
+                        target.restore(name, in.readLong());
+                        break;
+                    case DOUBLE:
+                        target.restore(name, in.readDouble());
+                        break;
+                    case BOOLEAN:
+                        target.restore(name, in.readBoolean());
+                        break;
+                    case STRING:
+                        target.restore(name, new String(readBytes(in), StandardCharsets.UTF_8));
+                        break;
+                    case BYTES:
+                        target.restore(name, readBytes(in));
+                        break;
+                    case SERIALIZED:
+                        byte[] bytes = readBytes(in);
+                        try (ObjectInputStream objectIn = new FilteredObjectInputStream(new ByteArrayInputStream(bytes))) {
+                            target.restore(name, objectIn.readObject());
+                        } catch (ClassNotFoundException | IOException e) {
+                            // the class may have been removed since the snapshot
+                            // was taken, or isn't allowed
+                            continue;
+                        }
+                        break;
+                    case LONG_EXPORT:
+                        target.restoreLong(name, in.readLong());
+                        break;
+                    case DOUBLE_EXPORT:
+                        target.restoreDouble(name, in.readDouble());
+                        break;
+                    case LONG_GAUGE:
+                        target.restoreLongGauge(name, in.readLong());
+                        break;
+                    case DOUBLE_GAUGE:
+                        target.restoreDoubleGauge(name, in.readDouble());
+                        break;
+                    default:
+                        throw new IOException("Unknown entry in export snapshot: " + tag);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * An {@link ObjectOutputStream} which refuses to write classes that
+     * wouldn't be allowed when the value is read back.
+     */
+    private static final class FilteredObjectOutputStream extends ObjectOutputStream {
+        FilteredObjectOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void annotateClass(Class<?> cl) throws IOException {
+            if (!isSerializable(cl.getName())) {
+                throw new InvalidClassException(cl.getName(), "not allowed in an export snapshot");
+            }
+        }
+    }
+
+    /**
+     * An {@link ObjectInputStream} which only resolves the allowed classes.
+     */
+    private static final class FilteredObjectInputStream extends ObjectInputStream {
+        FilteredObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isSerializable(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "not allowed in an export snapshot");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("proxy classes are not allowed in an export snapshot");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * A list of {@link Export.Listener}s, and the executors to notify them on.
+ *
+ * @param <T> the export type
+ */
+final class ListenerList<T> {
+    private final CopyOnWriteArrayList<Subscription<T>> subscriptions = new CopyOnWriteArrayList<>();
+
+    AutoCloseable add(Export.Listener<T> listener, Executor executor) {
+        Subscription<T> subscription = new Subscription<>(
+                Objects.requireNonNull(listener, "listener"),
+                Objects.requireNonNull(executor, "executor")
+        );
+        this.subscriptions.add(subscription);
+        return () -> this.subscriptions.remove(subscription);
+    }
+
+    boolean isEmpty() {
+        return this.subscriptions.isEmpty();
+    }
+
+    void fire(Export<T> export, T previous, T current) {
+        for (Subscription<T> subscription : this.subscriptions) {
+            subscription.executor.execute(() -> {
+                try {
+                    subscription.listener.onChange(export, previous, current);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    private static final class Subscription<T> {
+        private final Export.Listener<T> listener;
+        private final Executor executor;
+
+        private Subscription(Export.Listener<T> listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A numeric export holding a {@code long}, intended for gauges - values
+ * which are set rather than accumulated.
+ *
+ * <p>The value is held in a single atomic field, so unlike a
+ * {@link LongExport}, it can be read cheaply and set atomically, but
+ * concurrent writers contend with each other. Values are never boxed.</p>
+ *
+ * <p>Listeners registered with the {@link ExportRegistry} are not notified
+ * of changes to numeric exports.</p>
+ */
+public interface LongGauge {
+
+    /**
+     * Gets the name of the export
+     *
+     * @return the name
+     */
+    String name();
+
+    /**
+     * Gets the current value of the export.
+     *
+     * @return the current value
+     */
+    long get();
+
+    /**
+     * Sets the value of the export.
+     *
+     * @param value the value to set
+     */
+    void set(long value);
+
+    /**
+     * Sets the value of the export, and returns the previous value.
+     *
+     * @param value the value to set
+     * @return the previous value
+     */
+    long getAndSet(long value);
+
+    /**
+     * Sets the value of the export, if the current value is equal to the
+     * expected value.
+     *
+     * @param expected the expected current value
+     * @param value the value to set
+     * @return true if successful
+     */
+    boolean compareAndSet(long expected, long value);
+
+    /**
+     * Atomically adds the given value to the export.
+     *
+     * @param delta the value to add
+     * @return the updated value
+     */
+    long addAndGet(long delta);
+
+    /**
+     * Atomically updates the value of the export using the given function.
+     *
+     * <p>The function may be called more than once if the export is being
+     * updated concurrently, so should be free of side effects.</p>
+     *
+     * @param function the update function
+     * @return the updated value
+     */
+    long update(LongUnaryOperator function);
+
+}
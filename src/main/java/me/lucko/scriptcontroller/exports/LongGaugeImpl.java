@@ -0,0 +1,81 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * {@link AtomicLong} backed implementation of {@link LongGauge}.
+ */
+final class LongGaugeImpl extends RegistryEntry implements LongGauge {
+    private final String name;
+    private final AtomicLong value = new AtomicLong();
+
+    LongGaugeImpl(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String name() {
+        return this.name;
+    }
+
+    @Override
+    public long get() {
+        return this.value.get();
+    }
+
+    @Override
+    public void set(long value) {
+        this.value.set(value);
+    }
+
+    @Override
+    public long getAndSet(long value) {
+        return this.value.getAndSet(value);
+    }
+
+    @Override
+    public boolean compareAndSet(long expected, long value) {
+        return this.value.compareAndSet(expected, value);
+    }
+
+    @Override
+    public long addAndGet(long delta) {
+        return this.value.addAndGet(delta);
+    }
+
+    @Override
+    public long update(LongUnaryOperator function) {
+        return this.value.updateAndGet(function);
+    }
+
+    @Override
+    public String toString() {
+        return this.value.toString();
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * An {@link Export} whose value is held in a slot of a {@link MappedExportFile}.
+ *
+ * @param <T> the type
+ */
+final class MappedExport<T> implements Export<T>, Export.Pointer<T> {
+    private final String name;
+    private final MappedExportRegistry registry;
+    private final MappedExportFile file;
+    private final int slot;
+    private final ListenerList<T> listeners = new ListenerList<>();
+
+    MappedExport(String name, MappedExportRegistry registry, MappedExportFile file, int slot) {
+        this.name = name;
+        this.registry = registry;
+        this.file = file;
+        this.slot = slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T read(int offset) {
+        switch (this.file.type(offset)) {
+            case MappedExportFile.LONG:
+                return (T) (Long) this.file.getLong(offset);
+            case MappedExportFile.INTEGER:
+                return (T) (Integer) (int) this.file.getLong(offset);
+            case MappedExportFile.SHORT:
+                return (T) (Short) (short) this.file.getLong(offset);
+            case MappedExportFile.BYTE:
+                return (T) (Byte) (byte) this.file.getLong(offset);
+            case MappedExportFile.DOUBLE:
+                return (T) (Double) this.file.getDouble(offset);
+            case MappedExportFile.FLOAT:
+                return (T) (Float) (float) this.file.getDouble(offset);
+            case MappedExportFile.BOOLEAN:
+                return (T) (Boolean) (this.file.getLong(offset) != 0);
+            case MappedExportFile.STRING:
+                return (T) new String(this.file.getBytes(offset), StandardCharsets.UTF_8);
+            case MappedExportFile.BYTES:
+                return (T) this.file.getBytes(offset);
+            default:
+                return null;
+        }
+    }
+
+    private void write(int offset, T value) {
+        if (value == null) {
+            this.file.putNull(offset);
+        } else if (value instanceof Long) {
+            this.file.putLong(offset, MappedExportFile.LONG, (Long) value);
+        } else if (value instanceof Integer) {
+            this.file.putLong(offset, MappedExportFile.INTEGER, (Integer) value);
+        } else if (value instanceof Short) {
+            this.file.putLong(offset, MappedExportFile.SHORT, (Short) value);
+        } else if (value instanceof Byte) {
+            this.file.putLong(offset, MappedExportFile.BYTE, (Byte) value);
+        } else if (value instanceof Double) {
+            this.file.putDouble(offset, MappedExportFile.DOUBLE, (Double) value);
+        } else if (value instanceof Float) {
+            this.file.putDouble(offset, MappedExportFile.FLOAT, (Float) value);
+        } else if (value instanceof Boolean) {
+            this.file.putLong(offset, MappedExportFile.BOOLEAN, (Boolean) value ? 1 : 0);
+        } else if (value instanceof String) {
+            this.file.putBytes(offset, MappedExportFile.STRING, ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof byte[]) {
+            this.file.putBytes(offset, MappedExportFile.BYTES, (byte[]) value);
+        } else {
+            throw new IllegalArgumentException("Unsupported export value type: " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Computes and writes a new value while holding the lock for the slot.
+     *
+     * @param function the function to compute the new value from the current
+     *                 value, returning the current value to leave it unchanged
+     * @return the new value
+     */
+    private T modify(UnaryOperator<T> function) {
+        Object[] change = new Object[2];
+        T result = this.file.write(this.slot, offset -> {
+            T current = read(offset);
+            T value = function.apply(current);
+            if (value != current) {
+                write(offset, value);
+                change[0] = current;
+                change[1] = Boolean.TRUE;
+            }
+            return value;
+        });
+
+        if (change[1] != null && (!this.listeners.isEmpty() || !this.registry.getListeners().isEmpty())) {
+            fire(change[0], result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fire(Object previous, T current) {
+        this.listeners.fire(this, (T) previous, current);
+        this.registry.getListeners().fire((Export<Object>) this, previous, current);
+    }
+
+    @Override
+    public String name() {
+        return this.name;
+    }
+
+    @Override
+    public Pointer<T> pointer() {
+        return this;
+    }
+
+    @Override
+    public T get() {
+        return this.file.read(this.slot, this::read);
+    }
+
+    @Override
+    public T get(T other) {
+        T value = get();
+        return value != null ? value : other;
+    }
+
+    @Override
+    public Stamped<T> getStamped() {
+        return this.file.read(this.slot, offset -> new Snapshot<>(read(offset), this.file.stamp(offset)));
+    }
+
+    @Override
+    public long stamp() {
+        return this.file.read(this.slot, this.file::stamp);
+    }
+
+    @Override
+    public Export<T> put(T value) {
+        modify(current -> value);
+        return this;
+    }
+
+    @Override
+    public Export<T> putIfAbsent(T value) {
+        modify(current -> current == null ? value : current);
+        return this;
+    }
+
+    @Override
+    public Export<T> computeIfAbsent(Supplier<? extends T> other) {
+        if (containsValue()) {
+            return this;
+        }
+
+        // serialise callers in this process, so the supplier is called once
+        synchronized (this) {
+            if (!containsValue()) {
+                putIfAbsent(other.get());
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public boolean compareAndSet(T expected, T value) {
+        boolean[] success = new boolean[1];
+        modify(current -> {
+            success[0] = Objects.equals(current, expected);
+            return success[0] ? value : current;
+        });
+        return success[0];
+    }
+
+    @Override
+    public T update(UnaryOperator<T> function) {
+        return modify(function);
+    }
+
+    @Override
+    public boolean containsValue() {
+        return this.file.read(this.slot, offset -> this.file.type(offset) != MappedExportFile.NULL);
+    }
+
+    @Override
+    public void clear() {
+        modify(current -> null);
+    }
+
+    @Override
+    public AutoCloseable subscribe(Listener<T> listener, Executor executor) {
+        return this.listeners.add(listener, executor);
+    }
+
+    private static final class Snapshot<T> implements Stamped<T> {
+        private final T value;
+        private final long stamp;
+
+        private Snapshot(T value, long stamp) {
+            this.value = value;
+            this.stamp = stamp;
+        }
+
+        @Override
+        public T value() {
+            return this.value;
+        }
+
+        @Override
+        public long stamp() {
+            return this.stamp;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A memory-mapped file divided into fixed size slots, each holding the name
+ * and value of one export.
+ *
+ * <p>Slots are located by open addressing on the hash of the export name, and
+ * are never freed once claimed.</p>
+ *
+ * <p>Each slot has a sequence number, which is odd while the slot is being
+ * written to. Writers hold a lock on the slots region of the file, so writes
+ * are serialised between processes. Readers don't lock - they read the
+ * sequence before and after reading the value, and retry if a write was in
+ * progress or has occurred in between (a seqlock).</p>
+ *
+ * <p>File locks are held on behalf of the whole JVM, so only one instance is
+ * opened per file, and writes from threads within the JVM are serialised on
+ * a per-slot monitor. Instances are reference counted, and closed once every
+ * registry using them has been closed.</p>
+ */
+final class MappedExportFile {
+
+    /** The instances opened by this JVM, keyed by real path */
+    private static final Map<Path, MappedExportFile> OPEN = new HashMap<>();
+
+    private static final int MAGIC = 0x53434558; // SCEX
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+
+    static final int SLOT_SIZE = 128;
+    static final int MAX_NAME_LENGTH = 48;
+    static final int MAX_VALUE_LENGTH = 64;
+
+    // slot layout
+    private static final int NAME_LENGTH = 0;
+    private static final int NAME = 4;
+    private static final int TYPE = NAME + MAX_NAME_LENGTH;
+    private static final int VALUE_LENGTH = TYPE + 2;
+    private static final int SEQUENCE = VALUE_LENGTH + 2;
+    private static final int VALUE = SEQUENCE + 8;
+
+    // value types
+    static final byte NULL = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte BOOLEAN = 3;
+    static final byte STRING = 4;
+    static final byte BYTES = 5;
+    static final byte INTEGER = 6;
+    static final byte SHORT = 7;
+    static final byte BYTE = 8;
+    static final byte FLOAT = 9;
+
+    /** The number of times a reader retries before checking for an abandoned write */
+    private static final int SPIN_LIMIT = 1000;
+
+    static synchronized MappedExportFile open(Path file, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        Path key = file.toRealPath();
+
+        MappedExportFile existing = OPEN.get(key);
+        if (existing != null) {
+            channel.close();
+            if (existing.capacity != capacity) {
+                throw new IOException("File " + file + " is already mapped with a capacity of " + existing.capacity);
+            }
+            existing.references++;
+            return existing;
+        }
+
+        MappedExportFile mapped;
+        try {
+            mapped = new MappedExportFile(key, channel, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        OPEN.put(key, mapped);
+        return mapped;
+    }
+
+    private final Path key;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final Object[] monitors;
+
+    /** The number of registries using this instance, guarded by the class */
+    private int references = 1;
+
+    private MappedExportFile(Path key, FileChannel channel, int capacity) throws IOException {
+        this.key = key;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.monitors = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.monitors[i] = new Object();
+        }
+
+        long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        FileLock lock = channel.lock(0, HEADER_SIZE, false);
+        try {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            // the first process to map the file writes the header
+            if (this.buffer.getInt(0) == 0) {
+                this.buffer.putInt(0, MAGIC);
+                this.buffer.putInt(4, FORMAT_VERSION);
+                this.buffer.putInt(8, capacity);
+                this.buffer.putInt(12, SLOT_SIZE);
+            } else if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != FORMAT_VERSION || this.buffer.getInt(12) != SLOT_SIZE) {
+                throw new IOException("Unrecognised export file format");
+            } else if (this.buffer.getInt(8) != capacity) {
+                throw new IOException("Export file has a capacity of " + this.buffer.getInt(8) + ", not " + capacity);
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Releases a reference to this file, closing it if it is no longer used.
+     *
+     * <p>The mapping itself is released once the buffer is garbage collected.</p>
+     *
+     * @throws IOException if the file could not be closed
+     */
+    void close() throws IOException {
+        synchronized (MappedExportFile.class) {
+            if (--this.references != 0) {
+                return;
+            }
+            OPEN.remove(this.key);
+        }
+        this.channel.close();
+    }
+
+    int capacity() {
+        return this.capacity;
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * Finds the slot for the given name, claiming a new slot if the name
+     * isn't present.
+     *
+     * @param name the canonical name
+     * @return the slot
+     */
+    int slot(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Export name must be between 1 and " + MAX_NAME_LENGTH + " bytes: " + name);
+        }
+
+        int start = (name.hashCode() & Integer.MAX_VALUE) % this.capacity;
+        for (int i = 0; i < this.capacity; i++) {
+            int slot = (start + i) % this.capacity;
+            boolean match = write(slot, offset -> {
+                int length = this.buffer.getInt(offset + NAME_LENGTH);
+                if (length == 0) {
+                    // publish the name by writing its length last, see name(int)
+                    put(offset + NAME, bytes);
+                    Fences.storeFence();
+                    this.buffer.putInt(offset + NAME_LENGTH, bytes.length);
+                    return true;
+                }
+                return length == bytes.length && equals(offset + NAME, bytes);
+            });
+            if (match) {
+                return slot;
+            }
+        }
+        throw new IllegalStateException("Export file is full (" + this.capacity + " slots)");
+    }
+
+    /**
+     * Reads the name held by a slot.
+     *
+     * <p>Names never change once claimed, and are published by writing
+     * their length, so no lock is needed.</p>
+     *
+     * @param slot the slot
+     * @return the name, or null if the slot is free
+     */
+    String name(int slot) {
+        int offset = offset(slot);
+        int length = this.buffer.getInt(offset + NAME_LENGTH);
+        if (length <= 0 || length > MAX_NAME_LENGTH) {
+            return null;
+        }
+        Fences.loadFence();
+        return new String(get(offset + NAME, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads from a slot, without locking.
+     *
+     * <p>The action may observe a partially written slot, in which case it
+     * is called again - so it must not have side effects.</p>
+     *
+     * @param slot the slot
+     * @param action the action, which is passed the offset of the slot
+     * @param <R> the result type
+     * @return the result of the action, from a consistent read of the slot
+     */
+    <R> R read(int slot, SlotAction<R> action) {
+        ensureOpen();
+        int offset = offset(slot);
+        for (int attempt = 1; ; attempt++) {
+            long sequence = this.buffer.getLong(offset + SEQUENCE);
+            if ((sequence & 1) == 0) {
+                Fences.loadFence();
+                R result = action.apply(offset);
+                Fences.loadFence();
+                if (this.buffer.getLong(offset + SEQUENCE) == sequence) {
+                    return result;
+                }
+            }
+
+            if (attempt % SPIN_LIMIT == 0) {
+                // the writer may have died mid-write, leaving the sequence odd
+                repair(slot);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Runs an action while holding the write lock for the given slot.
+     *
+     * @param slot the slot
+     * @param action the action, which is passed the offset of the slot
+     * @param <R> the result type
+     * @return the result of the action
+     */
+    <R> R write(int slot, SlotAction<R> action) {
+        ensureOpen();
+        int offset = offset(slot);
+        synchronized (this.monitors[slot]) {
+            try {
+                FileLock lock = this.channel.lock(offset, SLOT_SIZE, false);
+                try {
+                    return action.apply(offset);
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void repair(int slot) {
+        write(slot, offset -> {
+            // the lock is free, so no write is in progress
+            long sequence = this.buffer.getLong(offset + SEQUENCE);
+            if ((sequence & 1) != 0) {
+                this.buffer.putLong(offset + SEQUENCE, sequence + 1);
+            }
+            return null;
+        });
+    }
+
+    private void ensureOpen() {
+        if (!this.channel.isOpen()) {
+            throw new IllegalStateException("Export file has been closed");
+        }
+    }
+
+    byte type(int offset) {
+        return this.buffer.get(offset + TYPE);
+    }
+
+    long stamp(int offset) {
+        return this.buffer.getLong(offset + SEQUENCE) >>> 1;
+    }
+
+    long getLong(int offset) {
+        return this.buffer.getLong(offset + VALUE);
+    }
+
+    double getDouble(int offset) {
+        return this.buffer.getDouble(offset + VALUE);
+    }
+
+    byte[] getBytes(int offset) {
+        // clamp the length, as a reader may observe a partial write
+        int length = Math.max(0, Math.min(MAX_VALUE_LENGTH, this.buffer.getShort(offset + VALUE_LENGTH)));
+        return get(offset + VALUE, length);
+    }
+
+    void putLong(int offset, byte type, long value) {
+        beginWrite(offset);
+        this.buffer.putLong(offset + VALUE, value);
+        endWrite(offset, type, 8);
+    }
+
+    void putDouble(int offset, byte type, double value) {
+        beginWrite(offset);
+        this.buffer.putDouble(offset + VALUE, value);
+        endWrite(offset, type, 8);
+    }
+
+    void putBytes(int offset, byte type, byte[] value) {
+        if (value.length > MAX_VALUE_LENGTH) {
+            throw new IllegalArgumentException("Value is longer than " + MAX_VALUE_LENGTH + " bytes");
+        }
+        beginWrite(offset);
+        put(offset + VALUE, value);
+        endWrite(offset, type, value.length);
+    }
+
+    void putNull(int offset) {
+        beginWrite(offset);
+        endWrite(offset, NULL, 0);
+    }
+
+    private void beginWrite(int offset) {
+        this.buffer.putLong(offset + SEQUENCE, this.buffer.getLong(offset + SEQUENCE) + 1);
+        Fences.storeFence();
+    }
+
+    private void endWrite(int offset, byte type, int length) {
+        this.buffer.put(offset + TYPE, type);
+        this.buffer.putShort(offset + VALUE_LENGTH, (short) length);
+        Fences.storeFence();
+        this.buffer.putLong(offset + SEQUENCE, this.buffer.getLong(offset + SEQUENCE) + 1);
+    }
+
+    private byte[] get(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = this.buffer.get(offset + i);
+        }
+        return bytes;
+    }
+
+    private void put(int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            this.buffer.put(offset + i, bytes[i]);
+        }
+    }
+
+    private boolean equals(int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (this.buffer.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    interface SlotAction<R> {
+        R apply(int offset);
+    }
+
+    /**
+     * Memory fences, used to order accesses to the buffer.
+     *
+     * <p>The buffer is shared with other processes, so isn't covered by the
+     * Java memory model, and Java 8 has no public fence API. The fences of
+     * sun.misc.Unsafe are used if available, otherwise a volatile access.</p>
+     */
+    private static final class Fences {
+        private static final MethodHandle LOAD_FENCE;
+        private static final MethodHandle STORE_FENCE;
+
+        private static volatile int fallback = 0;
+
+        static {
+            MethodHandle loadFence = null;
+            MethodHandle storeFence = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                Object unsafe = field.get(null);
+
+                MethodType type = MethodType.methodType(void.class);
+                loadFence = MethodHandles.lookup().findVirtual(unsafeClass, "loadFence", type).bindTo(unsafe);
+                storeFence = MethodHandles.lookup().findVirtual(unsafeClass, "storeFence", type).bindTo(unsafe);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // use the fallback
+            }
+            LOAD_FENCE = loadFence;
+            STORE_FENCE = storeFence;
+        }
+
+        static void loadFence() {
+            fence(LOAD_FENCE);
+        }
+
+        static void storeFence() {
+            fence(STORE_FENCE);
+        }
+
+        private static void fence(MethodHandle handle) {
+            if (handle == null) {
+                fallback++;
+                return;
+            }
+            try {
+                handle.invokeExact();
+            } catch (Throwable t) {
+                throw new AssertionError(t);
+            }
+        }
+    }
+}
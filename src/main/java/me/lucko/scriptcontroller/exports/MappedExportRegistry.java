@@ -0,0 +1,481 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * An {@link ExportRegistry} backed by a {@link MappedExportFile}, so exports
+ * can be shared between processes.
+ *
+ * <p>Names are compared using {@link Locale#ROOT}, so all processes agree on
+ * them regardless of their default locale.</p>
+ */
+final class MappedExportRegistry implements ExportRegistry, ExportSnapshot.Target {
+    private final MappedExportFile file;
+    private final ExportNames names = new ExportNames(Locale.ROOT);
+    private final Map<String, MappedExport<?>> exports = new ConcurrentHashMap<>();
+    private final Map<String, LongExport> longExports = new ConcurrentHashMap<>();
+    private final Map<String, DoubleExport> doubleExports = new ConcurrentHashMap<>();
+    private final Map<String, LongGauge> longGauges = new ConcurrentHashMap<>();
+    private final Map<String, DoubleGauge> doubleGauges = new ConcurrentHashMap<>();
+    private final ListenerList<Object> listeners = new ListenerList<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    MappedExportRegistry(MappedExportFile file) {
+        this.file = file;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Export<T> get(String name) {
+        String key = this.names.canonicalize(name);
+
+        MappedExport<?> export = this.exports.get(key);
+        if (export == null) {
+            export = this.exports.computeIfAbsent(key, k -> new MappedExport<>(k, this, this.file, this.file.slot(k)));
+        }
+
+        return (Export<T>) export;
+    }
+
+    @Override
+    public LongExport getLong(String name) {
+        return getLong(name, Long::sum, 0);
+    }
+
+    @Override
+    public DoubleExport getDouble(String name) {
+        return getDouble(name, Double::sum, 0);
+    }
+
+    @Override
+    public LongExport getLong(String name, LongBinaryOperator function, long identity) {
+        return getNumeric(this.longExports, name, k -> new MappedLongExport(k, this.file, this.file.slot(k), function, identity));
+    }
+
+    @Override
+    public DoubleExport getDouble(String name, DoubleBinaryOperator function, double identity) {
+        return getNumeric(this.doubleExports, name, k -> new MappedDoubleExport(k, this.file, this.file.slot(k), function, identity));
+    }
+
+    @Override
+    public LongGauge getLongGauge(String name) {
+        return getNumeric(this.longGauges, name, k -> new MappedLongGauge(k, this.file, this.file.slot(k)));
+    }
+
+    @Override
+    public DoubleGauge getDoubleGauge(String name) {
+        return getNumeric(this.doubleGauges, name, k -> new MappedDoubleGauge(k, this.file, this.file.slot(k)));
+    }
+
+    private <E> E getNumeric(Map<String, E> map, String name, Function<String, E> constructor) {
+        String key = this.names.canonicalize(name);
+
+        E export = map.get(key);
+        if (export == null) {
+            export = map.computeIfAbsent(key, constructor);
+        }
+        return export;
+    }
+
+    @Override
+    public void restore(String name, Object value) {
+        get(name).put(value);
+    }
+
+    @Override
+    public void restoreLong(String name, long value) {
+        // numeric exports share the slot with the gauge of the same name, so
+        // the value is written through the gauge - an accumulator obtained
+        // later applies its own function to it.
+        getLongGauge(name).set(value);
+    }
+
+    @Override
+    public void restoreDouble(String name, double value) {
+        getDoubleGauge(name).set(value);
+    }
+
+    @Override
+    public void restoreLongGauge(String name, long value) {
+        getLongGauge(name).set(value);
+    }
+
+    @Override
+    public void restoreDoubleGauge(String name, double value) {
+        getDoubleGauge(name).set(value);
+    }
+
+    @Override
+    public void remove(String name) {
+        get(name).clear();
+    }
+
+    @Override
+    public ExportRegistry namespace(String namespace) {
+        return new NamespacedExportRegistry(this, this.names.canonicalize(namespace) + SEPARATOR);
+    }
+
+    @Override
+    public void removeNamespace(String namespace) {
+        // slots are never freed, so the exports are just cleared
+        for (Export<?> export : getAll(this.names.canonicalize(namespace) + SEPARATOR)) {
+            export.clear();
+        }
+    }
+
+    @Override
+    public ExportRegistry ownedBy(Object owner) {
+        // exports in a mapped registry are shared with other processes, so
+        // their lifetime isn't tied to the scripts in this one. a view is
+        // returned so that closing it doesn't unmap the file.
+        return new NamespacedExportRegistry(this, "");
+    }
+
+    @Override
+    public void release(Object owner) {
+        // nothing to release - ownedBy doesn't record owners, as the exports
+        // may still be used by other processes after the owner is released.
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed.compareAndSet(false, true)) {
+            this.file.close();
+        }
+    }
+
+    @Override
+    public AutoCloseable subscribe(Export.Listener<Object> listener, Executor executor) {
+        return this.listeners.add(listener, executor);
+    }
+
+    ListenerList<Object> getListeners() {
+        return this.listeners;
+    }
+
+    @Override
+    public Collection<Export<?>> getAll() {
+        return getAll("");
+    }
+
+    @Override
+    public Collection<Export<?>> getAll(String prefix) {
+        String key = this.names.canonicalize(prefix);
+
+        List<Export<?>> exports = new ArrayList<>();
+        for (int slot = 0; slot < this.file.capacity(); slot++) {
+            String name = this.file.name(slot);
+            if (name != null && name.startsWith(key)) {
+                exports.add(get(name));
+            }
+        }
+        return Collections.unmodifiableList(exports);
+    }
+
+    private static long readLong(MappedExportFile file, int offset, long absent) {
+        switch (file.type(offset)) {
+            case MappedExportFile.LONG:
+            case MappedExportFile.INTEGER:
+            case MappedExportFile.SHORT:
+            case MappedExportFile.BYTE:
+                return file.getLong(offset);
+            default:
+                return absent;
+        }
+    }
+
+    private static double readDouble(MappedExportFile file, int offset, double absent) {
+        switch (file.type(offset)) {
+            case MappedExportFile.DOUBLE:
+            case MappedExportFile.FLOAT:
+                return file.getDouble(offset);
+            default:
+                return absent;
+        }
+    }
+
+    private static final class MappedLongExport implements LongExport {
+        private final String name;
+        private final MappedExportFile file;
+        private final int slot;
+        private final LongBinaryOperator function;
+        private final long identity;
+
+        private MappedLongExport(String name, MappedExportFile file, int slot, LongBinaryOperator function, long identity) {
+            this.name = name;
+            this.file = file;
+            this.slot = slot;
+            this.function = function;
+            this.identity = identity;
+        }
+
+        private long read(int offset) {
+            return readLong(this.file, offset, this.identity);
+        }
+
+        @Override
+        public String name() {
+            return this.name;
+        }
+
+        @Override
+        public void accumulate(long value) {
+            this.file.write(this.slot, offset -> {
+                this.file.putLong(offset, MappedExportFile.LONG, this.function.applyAsLong(read(offset), value));
+                return null;
+            });
+        }
+
+        @Override
+        public void add(long value) {
+            accumulate(value);
+        }
+
+        @Override
+        public void increment() {
+            add(1);
+        }
+
+        @Override
+        public void decrement() {
+            add(-1);
+        }
+
+        @Override
+        public long sum() {
+            return this.file.read(this.slot, this::read);
+        }
+
+        @Override
+        public void reset() {
+            sumThenReset();
+        }
+
+        @Override
+        public long sumThenReset() {
+            return this.file.write(this.slot, offset -> {
+                long sum = read(offset);
+                this.file.putLong(offset, MappedExportFile.LONG, this.identity);
+                return sum;
+            });
+        }
+    }
+
+    private static final class MappedDoubleExport implements DoubleExport {
+        private final String name;
+        private final MappedExportFile file;
+        private final int slot;
+        private final DoubleBinaryOperator function;
+        private final double identity;
+
+        private MappedDoubleExport(String name, MappedExportFile file, int slot, DoubleBinaryOperator function, double identity) {
+            this.name = name;
+            this.file = file;
+            this.slot = slot;
+            this.function = function;
+            this.identity = identity;
+        }
+
+        private double read(int offset) {
+            return readDouble(this.file, offset, this.identity);
+        }
+
+        @Override
+        public String name() {
+            return this.name;
+        }
+
+        @Override
+        public void accumulate(double value) {
+            this.file.write(this.slot, offset -> {
+                this.file.putDouble(offset, MappedExportFile.DOUBLE, this.function.applyAsDouble(read(offset), value));
+                return null;
+            });
+        }
+
+        @Override
+        public void add(double value) {
+            accumulate(value);
+        }
+
+        @Override
+        public double sum() {
+            return this.file.read(this.slot, this::read);
+        }
+
+        @Override
+        public void reset() {
+            sumThenReset();
+        }
+
+        @Override
+        public double sumThenReset() {
+            return this.file.write(this.slot, offset -> {
+                double sum = read(offset);
+                this.file.putDouble(offset, MappedExportFile.DOUBLE, this.identity);
+                return sum;
+            });
+        }
+    }
+
+    private static final class MappedLongGauge implements LongGauge {
+        private final String name;
+        private final MappedExportFile file;
+        private final int slot;
+
+        private MappedLongGauge(String name, MappedExportFile file, int slot) {
+            this.name = name;
+            this.file = file;
+            this.slot = slot;
+        }
+
+        @Override
+        public String name() {
+            return this.name;
+        }
+
+        @Override
+        public long get() {
+            return this.file.read(this.slot, offset -> readLong(this.file, offset, 0));
+        }
+
+        @Override
+        public void set(long value) {
+            getAndSet(value);
+        }
+
+        @Override
+        public long getAndSet(long value) {
+            return this.file.write(this.slot, offset -> {
+                long previous = readLong(this.file, offset, 0);
+                this.file.putLong(offset, MappedExportFile.LONG, value);
+                return previous;
+            });
+        }
+
+        @Override
+        public boolean compareAndSet(long expected, long value) {
+            return this.file.write(this.slot, offset -> {
+                if (readLong(this.file, offset, 0) != expected) {
+                    return false;
+                }
+                this.file.putLong(offset, MappedExportFile.LONG, value);
+                return true;
+            });
+        }
+
+        @Override
+        public long addAndGet(long delta) {
+            return update(value -> value + delta);
+        }
+
+        @Override
+        public long update(LongUnaryOperator function) {
+            return this.file.write(this.slot, offset -> {
+                long value = function.applyAsLong(readLong(this.file, offset, 0));
+                this.file.putLong(offset, MappedExportFile.LONG, value);
+                return value;
+            });
+        }
+    }
+
+    private static final class MappedDoubleGauge implements DoubleGauge {
+        private final String name;
+        private final MappedExportFile file;
+        private final int slot;
+
+        private MappedDoubleGauge(String name, MappedExportFile file, int slot) {
+            this.name = name;
+            this.file = file;
+            this.slot = slot;
+        }
+
+        @Override
+        public String name() {
+            return this.name;
+        }
+
+        @Override
+        public double get() {
+            return this.file.read(this.slot, offset -> readDouble(this.file, offset, 0));
+        }
+
+        @Override
+        public void set(double value) {
+            getAndSet(value);
+        }
+
+        @Override
+        public double getAndSet(double value) {
+            return this.file.write(this.slot, offset -> {
+                double previous = readDouble(this.file, offset, 0);
+                this.file.putDouble(offset, MappedExportFile.DOUBLE, value);
+                return previous;
+            });
+        }
+
+        @Override
+        public boolean compareAndSet(double expected, double value) {
+            return this.file.write(this.slot, offset -> {
+                if (Double.doubleToLongBits(readDouble(this.file, offset, 0)) != Double.doubleToLongBits(expected)) {
+                    return false;
+                }
+                this.file.putDouble(offset, MappedExportFile.DOUBLE, value);
+                return true;
+            });
+        }
+
+        @Override
+        public double addAndGet(double delta) {
+            return update(value -> value + delta);
+        }
+
+        @Override
+        public double update(DoubleUnaryOperator function) {
+            return this.file.write(this.slot, offset -> {
+                double value = function.applyAsDouble(readDouble(this.file, offset, 0));
+                this.file.putDouble(offset, MappedExportFile.DOUBLE, value);
+                return value;
+            });
+        }
+    }
+}
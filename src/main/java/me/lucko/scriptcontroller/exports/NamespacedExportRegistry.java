@@ -0,0 +1,183 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A view of an {@link ExportRegistry}, which prefixes all names with
+ * a namespace.
+ */
+final class NamespacedExportRegistry implements ExportRegistry, ExportSnapshot.Target {
+    private final ExportRegistry registry;
+
+    /** The prefix applied to names, including the trailing separator */
+    private final String prefix;
+
+    /** If the view owns the registry it wraps, and should close it when closed */
+    private final boolean ownsRegistry;
+
+    NamespacedExportRegistry(ExportRegistry registry, String prefix) {
+        this(registry, prefix, false);
+    }
+
+    private NamespacedExportRegistry(ExportRegistry registry, String prefix, boolean ownsRegistry) {
+        this.registry = registry;
+        this.prefix = prefix;
+        this.ownsRegistry = ownsRegistry;
+    }
+
+    @Override
+    public <T> Export<T> get(String name) {
+        return this.registry.get(this.prefix + name);
+    }
+
+    @Override
+    public LongExport getLong(String name) {
+        return this.registry.getLong(this.prefix + name);
+    }
+
+    @Override
+    public DoubleExport getDouble(String name) {
+        return this.registry.getDouble(this.prefix + name);
+    }
+
+    @Override
+    public LongExport getLong(String name, LongBinaryOperator function, long identity) {
+        return this.registry.getLong(this.prefix + name, function, identity);
+    }
+
+    @Override
+    public DoubleExport getDouble(String name, DoubleBinaryOperator function, double identity) {
+        return this.registry.getDouble(this.prefix + name, function, identity);
+    }
+
+    @Override
+    public LongGauge getLongGauge(String name) {
+        return this.registry.getLongGauge(this.prefix + name);
+    }
+
+    @Override
+    public DoubleGauge getDoubleGauge(String name) {
+        return this.registry.getDoubleGauge(this.prefix + name);
+    }
+
+    @Override
+    public void restore(String name, Object value) {
+        ExportSnapshot.target(this.registry).restore(this.prefix + name, value);
+    }
+
+    @Override
+    public void restoreLong(String name, long value) {
+        ExportSnapshot.target(this.registry).restoreLong(this.prefix + name, value);
+    }
+
+    @Override
+    public void restoreDouble(String name, double value) {
+        ExportSnapshot.target(this.registry).restoreDouble(this.prefix + name, value);
+    }
+
+    @Override
+    public void restoreLongGauge(String name, long value) {
+        ExportSnapshot.target(this.registry).restoreLongGauge(this.prefix + name, value);
+    }
+
+    @Override
+    public void restoreDoubleGauge(String name, double value) {
+        ExportSnapshot.target(this.registry).restoreDoubleGauge(this.prefix + name, value);
+    }
+
+    @Override
+    public void remove(String name) {
+        this.registry.remove(this.prefix + name);
+    }
+
+    @Override
+    public ExportRegistry namespace(String namespace) {
+        return this.registry.namespace(this.prefix + namespace);
+    }
+
+    @Override
+    public void removeNamespace(String namespace) {
+        this.registry.removeNamespace(this.prefix + namespace);
+    }
+
+    @Override
+    public ExportRegistry ownedBy(Object owner) {
+        return new NamespacedExportRegistry(this.registry.ownedBy(owner), this.prefix, true);
+    }
+
+    @Override
+    public void release(Object owner) {
+        this.registry.release(owner);
+    }
+
+    @Override
+    public AutoCloseable subscribe(Export.Listener<Object> listener, Executor executor) {
+        return this.registry.subscribe((export, previous, current) -> {
+            if (export.name().startsWith(this.prefix)) {
+                listener.onChange(export, previous, current);
+            }
+        }, executor);
+    }
+
+    @Override
+    public Collection<Export<?>> getAll() {
+        return this.registry.getAll(this.prefix);
+    }
+
+    @Override
+    public Collection<Export<?>> getAll(String prefix) {
+        return this.registry.getAll(this.prefix + prefix);
+    }
+
+    @Override
+    public void snapshot(Path file) throws IOException {
+        // names are written relative to the namespace, so they can be restored into it
+        if (this.registry instanceof ExportSnapshot.Source) {
+            ((ExportSnapshot.Source) this.registry).snapshot(file, this.prefix);
+        } else {
+            // e.g. a mapped registry, which holds numeric values in its exports
+            ExportSnapshot.write(file, this.prefix, getAll(), Collections.emptyList(), Collections.emptyList(),
+                    Collections.emptyList(), Collections.emptyList());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // only close the owned view created by ownedBy - the registry passed
+        // to the constructor is shared, and outlives this view
+        if (this.ownsRegistry) {
+            this.registry.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * An export obtained through an {@link OwnedExportRegistry}, which records
+ * the listeners subscribed to it against the view.
+ *
+ * <p>The {@link #pointer() pointer} is the underlying export, so reads via
+ * a pointer don't go through the wrapper.</p>
+ *
+ * @param <T> the type
+ */
+final class OwnedExport<T> implements Export<T> {
+    private final ExportImpl<T> export;
+    private final OwnedExportRegistry registry;
+
+    OwnedExport(ExportImpl<T> export, OwnedExportRegistry registry) {
+        this.export = export;
+        this.registry = registry;
+    }
+
+    boolean wraps(Export<?> export) {
+        return this.export == export;
+    }
+
+    @Override
+    public String name() {
+        return this.export.name();
+    }
+
+    @Override
+    public Pointer<T> pointer() {
+        return this.export;
+    }
+
+    @Override
+    public T get() {
+        return this.export.get();
+    }
+
+    @Override
+    public T get(T other) {
+        return this.export.get(other);
+    }
+
+    @Override
+    public Stamped<T> getStamped() {
+        return this.export.getStamped();
+    }
+
+    @Override
+    public long stamp() {
+        return this.export.stamp();
+    }
+
+    @Override
+    public Export<T> put(T value) {
+        this.export.put(value);
+        return this;
+    }
+
+    @Override
+    public Export<T> putIfAbsent(T value) {
+        this.export.putIfAbsent(value);
+        return this;
+    }
+
+    @Override
+    public Export<T> computeIfAbsent(Supplier<? extends T> other) {
+        this.export.computeIfAbsent(other);
+        return this;
+    }
+
+    @Override
+    public boolean compareAndSet(T expected, T value) {
+        return this.export.compareAndSet(expected, value);
+    }
+
+    @Override
+    public T update(UnaryOperator<T> function) {
+        return this.export.update(function);
+    }
+
+    @Override
+    public boolean containsValue() {
+        return this.export.containsValue();
+    }
+
+    @Override
+    public void clear() {
+        this.export.clear();
+    }
+
+    @Override
+    public AutoCloseable subscribe(Listener<T> listener, Executor executor) {
+        return this.registry.track(this.export.subscribe(listener, executor));
+    }
+
+    @Override
+    public String toString() {
+        return this.export.toString();
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A view of an {@link ExportRegistryImpl}, which claims ownership of every
+ * export obtained through it.
+ *
+ * <p>Listeners subscribed through the view, or through the exports obtained
+ * from it, are unsubscribed when the view is closed or its owner is
+ * released.</p>
+ */
+final class OwnedExportRegistry implements ExportRegistry, ExportSnapshot.Source, ExportSnapshot.Target {
+    private final ExportRegistryImpl registry;
+    private final Object owner;
+
+    /** The keys already claimed through this view, to skip the registry lock */
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+
+    /** The exports obtained through this view, by key */
+    private final Map<String, OwnedExport<?>> exports = new ConcurrentHashMap<>();
+
+    /** The subscriptions made through this view */
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    OwnedExportRegistry(ExportRegistryImpl registry, Object owner) {
+        this.registry = registry;
+        this.owner = owner;
+    }
+
+    private void claim(String name) {
+        String key = this.registry.key(name);
+        if (this.claimed.add(key)) {
+            this.registry.claim(key, this.owner);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Export<T> wrap(Export<T> export) {
+        OwnedExport<?> owned = this.exports.get(export.name());
+        if (owned == null || !owned.wraps(export)) {
+            // the export may have been replaced since it was last obtained
+            owned = new OwnedExport<>((ExportImpl<T>) export, this);
+            this.exports.put(export.name(), owned);
+        }
+        return (Export<T>) owned;
+    }
+
+    /**
+     * Records a subscription made through this view.
+     *
+     * @param subscription the subscription
+     * @return an {@link AutoCloseable} which closes the subscription
+     */
+    AutoCloseable track(AutoCloseable subscription) {
+        Subscription tracked = new Subscription(subscription);
+        this.subscriptions.add(tracked);
+        this.registry.register(this.owner, this);
+        return tracked;
+    }
+
+    /**
+     * Closes every subscription made through this view.
+     */
+    void unsubscribeAll() {
+        for (Subscription subscription : this.subscriptions) {
+            try {
+                subscription.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public <T> Export<T> get(String name) {
+        claim(name);
+        return wrap(this.registry.get(name, false));
+    }
+
+    @Override
+    public LongExport getLong(String name) {
+        claim(name);
+        return this.registry.getLong(name, false);
+    }
+
+    @Override
+    public DoubleExport getDouble(String name) {
+        claim(name);
+        return this.registry.getDouble(name, false);
+    }
+
+    @Override
+    public LongExport getLong(String name, LongBinaryOperator function, long identity) {
+        claim(name);
+        return this.registry.getLong(name, function, identity, false);
+    }
+
+    @Override
+    public DoubleExport getDouble(String name, DoubleBinaryOperator function, double identity) {
+        claim(name);
+        return this.registry.getDouble(name, function, identity, false);
+    }
+
+    @Override
+    public LongGauge getLongGauge(String name) {
+        claim(name);
+        return this.registry.getLongGauge(name, false);
+    }
+
+    @Override
+    public DoubleGauge getDoubleGauge(String name) {
+        claim(name);
+        return this.registry.getDoubleGauge(name, false);
+    }
+
+    @Override
+    public void restore(String name, Object value) {
+        claim(name);
+        this.registry.restore(name, value);
+    }
+
+    @Override
+    public void restoreLong(String name, long value) {
+        claim(name);
+        this.registry.restoreLong(name, value);
+    }
+
+    @Override
+    public void restoreDouble(String name, double value) {
+        claim(name);
+        this.registry.restoreDouble(name, value);
+    }
+
+    @Override
+    public void restoreLongGauge(String name, long value) {
+        claim(name);
+        this.registry.restoreLongGauge(name, value);
+    }
+
+    @Override
+    public void restoreDoubleGauge(String name, double value) {
+        claim(name);
+        this.registry.restoreDoubleGauge(name, value);
+    }
+
+    @Override
+    public void remove(String name) {
+        this.registry.remove(name);
+    }
+
+    @Override
+    public ExportRegistry namespace(String namespace) {
+        return new NamespacedExportRegistry(this, this.registry.key(namespace) + SEPARATOR);
+    }
+
+    @Override
+    public void removeNamespace(String namespace) {
+        this.registry.removeNamespace(namespace);
+    }
+
+    @Override
+    public ExportRegistry ownedBy(Object owner) {
+        return this.registry.ownedBy(owner);
+    }
+
+    @Override
+    public void release(Object owner) {
+        this.registry.release(owner);
+    }
+
+    @Override
+    public AutoCloseable subscribe(Export.Listener<Object> listener, Executor executor) {
+        return track(this.registry.subscribe(listener, executor));
+    }
+
+    @Override
+    public Collection<Export<?>> getAll() {
+        return getAll("");
+    }
+
+    @Override
+    public Collection<Export<?>> getAll(String prefix) {
+        List<Export<?>> exports = new ArrayList<>();
+        for (Export<?> export : this.registry.getAll(prefix, false)) {
+            exports.add(wrap(export));
+        }
+        return Collections.unmodifiableList(exports);
+    }
+
+    @Override
+    public void snapshot(Path file) throws IOException {
+        this.registry.snapshot(file);
+    }
+
+    @Override
+    public void snapshot(Path file, String prefix) throws IOException {
+        this.registry.snapshot(file, prefix);
+    }
+
+    /**
+     * Closes every subscription made through this view. Ownership of
+     * exports is kept until the owner is {@link #release(Object) released}.
+     */
+    @Override
+    public void close() {
+        this.registry.unregister(this.owner, this);
+        unsubscribeAll();
+    }
+
+    private final class Subscription implements AutoCloseable {
+        private final AutoCloseable delegate;
+
+        private Subscription(AutoCloseable delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void close() throws Exception {
+            OwnedExportRegistry.this.subscriptions.remove(this);
+            this.delegate.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+/**
+ * Base class for the exports held by an {@link ExportRegistryImpl}.
+ *
+ * <p>Records whether the export has been handed out other than through an
+ * {@link OwnedExportRegistry}. Such exports are pinned - the caller may
+ * hold onto them, so they are kept in the registry once their owners are
+ * released, rather than being removed.</p>
+ */
+abstract class RegistryEntry {
+    private volatile boolean pinned = false;
+
+    /**
+     * Pins the export, so it is kept in the registry once released.
+     */
+    final void pin() {
+        // avoid the volatile write once pinned
+        if (!this.pinned) {
+            this.pinned = true;
+        }
+    }
+
+    /**
+     * Gets if the export can be removed from the registry once its owners
+     * have been released.
+     *
+     * @return true if the export is unused
+     */
+    boolean isUnused() {
+        return !this.pinned;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.internal;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects filesystem events, and coalesces them into a single set of
+ * changes once no further events have been recorded for a quiet period.
+ *
+ * <p>So that a steady stream of events can't postpone the changes forever,
+ * they are also released once {@link #MAX_WAIT_FACTOR} quiet periods have
+ * passed since the first of them was recorded.</p>
+ */
+final class ChangeDebouncer {
+
+    /** The maximum time changes are held for, as a multiple of the quiet period */
+    static final int MAX_WAIT_FACTOR = 10;
+
+    /** The quiet period, in nanoseconds */
+    private final long quietPeriod;
+
+    /** The maximum time changes are held for, in nanoseconds */
+    private final long maxWait;
+
+    /** The pending changes - the most recent event kind for each path */
+    private Map<Path, WatchEvent.Kind<?>> pending = new LinkedHashMap<>();
+
+    /** The number of events recorded since the last drain */
+    private int events = 0;
+
+    /**
+     * The time the last event was recorded. This is when the event was
+     * polled from the watch service, which may be some time after the change
+     * itself occurred (up to a full poll interval in polling mode).
+     */
+    private long lastEventTime = 0;
+
+    /** The time the first of the pending events was recorded */
+    private long firstEventTime = 0;
+
+    ChangeDebouncer(Duration quietPeriod) {
+        this.quietPeriod = quietPeriod.getUnit().toNanos(quietPeriod.getDuration());
+        this.maxWait = this.quietPeriod * MAX_WAIT_FACTOR;
+    }
+
+    public long getQuietPeriodNanos() {
+        return this.quietPeriod;
+    }
+
+    public long getMaxWaitNanos() {
+        return this.maxWait;
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param path the path the event occurred at
+     * @param kind the kind of event
+     */
+    public synchronized void record(Path path, WatchEvent.Kind<?> kind) {
+        long now = System.nanoTime();
+        if (this.pending.isEmpty()) {
+            this.firstEventTime = now;
+        }
+        this.pending.put(path, kind);
+        this.events++;
+        this.lastEventTime = now;
+    }
+
+    /**
+     * Drains the pending changes, if the quiet period has elapsed since the
+     * last event was recorded, or the maximum wait has elapsed since the
+     * first.
+     *
+     * @return the coalesced changes, or null if there are no changes ready
+     */
+    public synchronized Batch drain() {
+        if (this.pending.isEmpty()) {
+            return null;
+        }
+
+        long now = System.nanoTime();
+        boolean quiet = now - this.lastEventTime >= this.quietPeriod;
+        if (!quiet && now - this.firstEventTime < this.maxWait) {
+            return null;
+        }
+
+        Batch batch = new Batch(this.pending, this.events, quiet && this.quietPeriod != 0);
+        this.pending = new LinkedHashMap<>();
+        this.events = 0;
+        return batch;
+    }
+
+    /**
+     * A coalesced set of changes
+     */
+    static final class Batch {
+        private final Map<Path, WatchEvent.Kind<?>> changes;
+        private final int events;
+        private final boolean settled;
+
+        private Batch(Map<Path, WatchEvent.Kind<?>> changes, int events, boolean settled) {
+            this.changes = Collections.unmodifiableMap(changes);
+            this.events = events;
+            this.settled = settled;
+        }
+
+        public Map<Path, WatchEvent.Kind<?>> getChanges() {
+            return this.changes;
+        }
+
+        public int getMergedEvents() {
+            return this.events - this.changes.size();
+        }
+
+        /**
+         * Gets if no events were recorded for a non-zero quiet period before
+         * the batch was drained, so the writes which caused them are likely
+         * to have finished.
+         *
+         * @return if the batch has settled
+         */
+        public boolean isSettled() {
+            return this.settled;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.internal;
+
+import me.lucko.scriptcontroller.environment.loader.CompiledScriptCache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * LRU implementation of {@link CompiledScriptCache}.
+ */
+class CompiledScriptCacheImpl implements CompiledScriptCache {
+
+    /** The engines used to compile scripts */
+    private final ScriptEnginePool engines;
+
+    /** The maximum number of units to retain */
+    private final int maximumSize;
+
+    /** The cached units, in access order */
+    private final Map<Path, CacheEntry> entries = new LinkedHashMap<Path, CacheEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, CacheEntry> eldest) {
+            if (size() > CompiledScriptCacheImpl.this.maximumSize) {
+                CompiledScriptCacheImpl.this.evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /** The digest of the content most recently evaluated for each path */
+    private final Map<Path, ContentDigest> digests = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    CompiledScriptCacheImpl(ScriptEnginePool engines, int maximumSize) {
+        this.engines = engines;
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Evaluates the script file at the given path within the given context,
+     * using a cached compiled unit if the content of the file hasn't changed
+     * since it was last compiled.
+     *
+     * <p>Units are compiled separately for each engine in the pool.</p>
+     *
+     * @param engineIndex the index of the engine to evaluate with
+     * @param path the path of the script file
+     * @param context the context to evaluate the script in
+     * @return the result of the evaluation
+     * @throws IOException if the file could not be read
+     * @throws ScriptException if the script could not be compiled or evaluated
+     */
+    public Object eval(int engineIndex, Path path, ScriptContext context) throws IOException, ScriptException {
+        ScriptEngine scriptEngine = this.engines.get(engineIndex);
+        path = path.toAbsolutePath().normalize();
+        byte[] content = Files.readAllBytes(path);
+        ContentDigest digest = ContentDigest.of(content);
+        this.digests.put(path, digest);
+
+        if (!(scriptEngine instanceof Compilable)) {
+            this.misses.incrementAndGet();
+            context.setAttribute(ScriptEngine.FILENAME, path.toString(), ScriptContext.ENGINE_SCOPE);
+            return scriptEngine.eval(ContentDigest.decode(content), context);
+        }
+
+        CacheEntry entry;
+        synchronized (this.entries) {
+            entry = this.entries.get(path);
+            if (entry == null || !entry.digest.equals(digest)) {
+                entry = new CacheEntry(digest, this.engines.size());
+                this.entries.put(path, entry);
+            }
+        }
+
+        CompiledScript script = entry.scripts.get(engineIndex);
+        if (script != null) {
+            this.hits.incrementAndGet();
+        } else {
+            this.misses.incrementAndGet();
+            script = compile(scriptEngine, path.toString(), ContentDigest.decode(content));
+            entry.scripts.set(engineIndex, script);
+        }
+
+        return script.eval(context);
+    }
+
+    /**
+     * Gets the digest of the content most recently evaluated for the given
+     * path.
+     *
+     * @param path the path of the script file
+     * @return the digest, or null if the file hasn't been evaluated
+     */
+    public ContentDigest getDigest(Path path) {
+        return this.digests.get(path.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Compiles the given source using a {@link Compilable} engine.
+     *
+     * @param scriptEngine the engine
+     * @param name the name of the source, used in stack traces
+     * @param source the source
+     * @return the compiled script
+     * @throws ScriptException if the source could not be compiled
+     */
+    static CompiledScript compile(ScriptEngine scriptEngine, String name, String source) throws ScriptException {
+        synchronized (scriptEngine) {
+            // the engine reads the name of the source from the engine scope of its
+            // default context. a context with other engine bindings would make the
+            // engine create a new global, so the name is set only for the compile.
+            Bindings bindings = scriptEngine.getBindings(ScriptContext.ENGINE_SCOPE);
+            boolean present = bindings.containsKey(ScriptEngine.FILENAME);
+            Object previous = bindings.put(ScriptEngine.FILENAME, name);
+            try {
+                return ((Compilable) scriptEngine).compile(source);
+            } finally {
+                if (present) {
+                    bindings.put(ScriptEngine.FILENAME, previous);
+                } else {
+                    bindings.remove(ScriptEngine.FILENAME);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    @Override
+    public long hitCount() {
+        return this.hits.get();
+    }
+
+    @Override
+    public long missCount() {
+        return this.misses.get();
+    }
+
+    @Override
+    public long evictionCount() {
+        return this.evictions.get();
+    }
+
+    @Override
+    public void invalidate(Path path) {
+        path = path.toAbsolutePath().normalize();
+        this.digests.remove(path);
+        synchronized (this.entries) {
+            if (this.entries.remove(path) != null) {
+                this.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        this.digests.clear();
+        synchronized (this.entries) {
+            this.evictions.addAndGet(this.entries.size());
+            this.entries.clear();
+        }
+    }
+
+    private static final class CacheEntry {
+        private final ContentDigest digest;
+
+        /**
+         * The compiled units, indexed by engine. A unit may be compiled
+         * twice if two threads race, but either result is valid.
+         */
+        private final AtomicReferenceArray<CompiledScript> scripts;
+
+        private CacheEntry(ContentDigest digest, int engines) {
+            this.digest = digest;
+            this.scripts = new AtomicReferenceArray<>(engines);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A digest of the content of a script file.
+ */
+final class ContentDigest {
+    private static final String ALGORITHM = "SHA-256";
+
+    /**
+     * Computes the digest of the given content.
+     *
+     * @param content the content
+     * @return the digest
+     */
+    static ContentDigest of(byte[] content) {
+        try {
+            return new ContentDigest(MessageDigest.getInstance(ALGORITHM).digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Decodes the given content into a string, dropping any UTF-8 byte order mark.
+     *
+     * @param content the content
+     * @return the decoded string
+     */
+    static String decode(byte[] content) {
+        String string = new String(content, StandardCharsets.UTF_8);
+        if (!string.isEmpty() && string.charAt(0) == '\uFEFF') {
+            string = string.substring(1);
+        }
+        return string;
+    }
+
+    private final byte[] hash;
+    private final int hashCode;
+
+    private ContentDigest(byte[] hash) {
+        this.hash = hash;
+        this.hashCode = Arrays.hashCode(hash);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ContentDigest)) return false;
+        return Arrays.equals(this.hash, ((ContentDigest) o).hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.internal;
+
+import me.lucko.scriptcontroller.environment.script.Script;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A reverse index of script dependencies, mapping each path to the paths of
+ * the registered scripts which depend on it.
+ */
+final class DependencyIndex {
+
+    /** dependency path -> dependent script paths */
+    private final Map<Path, Set<Path>> dependents = new HashMap<>();
+
+    /**
+     * Records that a script depends on the given path.
+     *
+     * @param script the path of the dependent script
+     * @param dependency the path depended on
+     */
+    public synchronized void add(Path script, Path dependency) {
+        this.dependents.computeIfAbsent(dependency, p -> new HashSet<>()).add(script);
+    }
+
+    /**
+     * Removes all of the dependencies recorded for the given script.
+     *
+     * @param script the script
+     */
+    public synchronized void removeAll(Script script) {
+        Path path = script.getPath();
+        for (Path dependency : script.getDependencies()) {
+            Set<Path> set = this.dependents.get(dependency);
+            if (set != null && set.remove(path) && set.isEmpty()) {
+                this.dependents.remove(dependency);
+            }
+        }
+    }
+
+    /**
+     * Gets the paths of the scripts which directly depend on the given path.
+     *
+     * @param dependency the path
+     * @return the dependent script paths
+     */
+    public synchronized Set<Path> getDependents(Path dependency) {
+        Set<Path> set = this.dependents.get(dependency);
+        if (set == null) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(set);
+    }
+
+    /**
+     * Gets every path which is depended on by a registered script.
+     *
+     * @return the dependency paths
+     */
+    public synchronized Set<Path> getDependencies() {
+        return new HashSet<>(this.dependents.keySet());
+    }
+
+    public synchronized void clear() {
+        this.dependents.clear();
+    }
+}
@@ -26,13 +26,16 @@
 package me.lucko.scriptcontroller.internal;
 
 import me.lucko.scriptcontroller.bindings.BindingsSupplier;
+import me.lucko.scriptcontroller.environment.engine.ScriptEngineProvider;
 import me.lucko.scriptcontroller.environment.loader.ScriptLoadingExecutor;
 import me.lucko.scriptcontroller.environment.settings.EnvironmentSettings;
 
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -44,7 +47,12 @@ class EnvironmentSettingsImpl implements EnvironmentSettings {
     private static final Supplier<ScriptLoadingExecutor> DEFAULT_LOAD_EXECUTOR = () -> ScriptLoadingExecutor.usingJavaScheduler(Executors.newSingleThreadScheduledExecutor());
     private static final Executor DEFAULT_RUN_EXECUTOR = Runnable::run;
     private static final Duration DEFAULT_POLL_RATE = new Duration(1, TimeUnit.SECONDS);
+    private static final Duration DEFAULT_RELOAD_DEBOUNCE = new Duration(0, TimeUnit.MILLISECONDS);
+    private static final Duration DEFAULT_EVENT_DRIVEN_RELOAD_DEBOUNCE = new Duration(100, TimeUnit.MILLISECONDS);
+    private static final ScriptEngineProvider DEFAULT_ENGINE_PROVIDER = ScriptEngineProvider.nashorn();
     private static final String DEFAULT_INIT_SCRIPT = "init.js";
+    private static final int DEFAULT_COMPILED_SCRIPT_CACHE_SIZE = 1024;
+    private static final int DEFAULT_PRELOAD_PARALLELISM = 1;
 
     private static final EnvironmentSettings DEFAULT = builder().build();
 
@@ -62,16 +70,34 @@ class EnvironmentSettingsImpl implements EnvironmentSettings {
     private final Set<String> packageImports;
     private final Set<String> typeImports;
     private final Duration pollRate;
+    private final Boolean eventDrivenLoading;
+    private final Duration reloadDebounce;
+    private final Boolean keepExportsOnReload;
+    private final Locale exportNameLocale;
+    private final Path exportSnapshot;
+    private final ScriptEngineProvider engineProvider;
     private final String initScript;
+    private final int compiledScriptCacheSize;
+    private final int preloadParallelism;
+    private final int enginePoolSize;
 
     private EnvironmentSettingsImpl(Builder builder) {
         this.pollRate = builder.pollRate;
+        this.eventDrivenLoading = builder.eventDrivenLoading;
+        this.reloadDebounce = builder.reloadDebounce;
+        this.keepExportsOnReload = builder.keepExportsOnReload;
+        this.exportNameLocale = builder.exportNameLocale;
+        this.exportSnapshot = builder.exportSnapshot;
+        this.engineProvider = builder.engineProvider;
         this.loadExecutor = builder.loadExecutor;
         this.runExecutor = builder.runExecutor;
         this.bindings = Collections.unmodifiableSet(new HashSet<>(builder.bindings));
         this.packageImports = Collections.unmodifiableSet(new LinkedHashSet<>(builder.packageImports));
         this.typeImports = Collections.unmodifiableSet(new LinkedHashSet<>(builder.typeImports));
         this.initScript = builder.initScript;
+        this.compiledScriptCacheSize = builder.compiledScriptCacheSize;
+        this.preloadParallelism = builder.preloadParallelism;
+        this.enginePoolSize = builder.enginePoolSize;
     }
 
     public ScriptLoadingExecutor getLoadExecutor() {
@@ -107,6 +133,55 @@ class EnvironmentSettingsImpl implements EnvironmentSettings {
         return this.pollRate;
     }
 
+    public boolean isEventDrivenLoading() {
+        if (this.eventDrivenLoading == null) {
+            return false;
+        }
+        return this.eventDrivenLoading;
+    }
+
+    public Duration getReloadDebounce() {
+        if (this.reloadDebounce == null) {
+            // events are handled as soon as they're signalled, so without a quiet
+            // period the loader would see the first event of a write (e.g. the
+            // truncate) and load a half written file.
+            return isEventDrivenLoading() ? DEFAULT_EVENT_DRIVEN_RELOAD_DEBOUNCE : DEFAULT_RELOAD_DEBOUNCE;
+        }
+        return this.reloadDebounce;
+    }
+
+    public boolean isKeepExportsOnReload() {
+        if (this.keepExportsOnReload == null) {
+            return true;
+        }
+        return this.keepExportsOnReload;
+    }
+
+    /**
+     * Gets the locale used to compare export names.
+     *
+     * @return the locale, or null to use the default locale
+     */
+    public Locale getExportNameLocale() {
+        return this.exportNameLocale;
+    }
+
+    /**
+     * Gets the file used to persist exports.
+     *
+     * @return the file, or null if exports should not be persisted
+     */
+    public Path getExportSnapshot() {
+        return this.exportSnapshot;
+    }
+
+    public ScriptEngineProvider getEngineProvider() {
+        if (this.engineProvider == null) {
+            return DEFAULT_ENGINE_PROVIDER;
+        }
+        return this.engineProvider;
+    }
+
     public String getInitScript() {
         if (this.initScript == null) {
             return DEFAULT_INIT_SCRIPT;
@@ -114,6 +189,27 @@ class EnvironmentSettingsImpl implements EnvironmentSettings {
         return this.initScript;
     }
 
+    public int getCompiledScriptCacheSize() {
+        if (this.compiledScriptCacheSize == -1) {
+            return DEFAULT_COMPILED_SCRIPT_CACHE_SIZE;
+        }
+        return this.compiledScriptCacheSize;
+    }
+
+    public int getPreloadParallelism() {
+        if (this.preloadParallelism == -1) {
+            return DEFAULT_PRELOAD_PARALLELISM;
+        }
+        return this.preloadParallelism;
+    }
+
+    public int getEnginePoolSize() {
+        if (this.enginePoolSize == -1) {
+            return getPreloadParallelism();
+        }
+        return this.enginePoolSize;
+    }
+
     private static final class Builder implements EnvironmentSettings.Builder {
         private ScriptLoadingExecutor loadExecutor = null;
         private Executor runExecutor = null;
@@ -121,7 +217,16 @@ class EnvironmentSettingsImpl implements EnvironmentSettings {
         private final Set<String> packageImports = new LinkedHashSet<>();
         private final Set<String> typeImports = new LinkedHashSet<>();
         private Duration pollRate = null;
+        private Boolean eventDrivenLoading = null;
+        private Duration reloadDebounce = null;
+        private Boolean keepExportsOnReload = null;
+        private Locale exportNameLocale = null;
+        private Path exportSnapshot = null;
+        private ScriptEngineProvider engineProvider = null;
         private String initScript = null;
+        private int compiledScriptCacheSize = -1;
+        private int preloadParallelism = -1;
+        private int enginePoolSize = -1;
 
         @Override
         public Builder mergeSettingsFrom(EnvironmentSettings other) {
@@ -140,6 +245,33 @@ class EnvironmentSettingsImpl implements EnvironmentSettings {
             if (that.pollRate != null) {
                 this.pollRate = that.pollRate;
             }
+            if (that.eventDrivenLoading != null) {
+                this.eventDrivenLoading = that.eventDrivenLoading;
+            }
+            if (that.reloadDebounce != null) {
+                this.reloadDebounce = that.reloadDebounce;
+            }
+            if (that.keepExportsOnReload != null) {
+                this.keepExportsOnReload = that.keepExportsOnReload;
+            }
+            if (that.exportNameLocale != null) {
+                this.exportNameLocale = that.exportNameLocale;
+            }
+            if (that.exportSnapshot != null) {
+                this.exportSnapshot = that.exportSnapshot;
+            }
+            if (that.engineProvider != null) {
+                this.engineProvider = that.engineProvider;
+            }
+            if (that.compiledScriptCacheSize != -1) {
+                this.compiledScriptCacheSize = that.compiledScriptCacheSize;
+            }
+            if (that.preloadParallelism != -1) {
+                this.preloadParallelism = that.preloadParallelism;
+            }
+            if (that.enginePoolSize != -1) {
+                this.enginePoolSize = that.enginePoolSize;
+            }
             return this;
         }
 
@@ -186,12 +318,78 @@ class EnvironmentSettingsImpl implements EnvironmentSettings {
             return this;
         }
 
+        @Override
+        public Builder eventDrivenLoading(boolean eventDriven) {
+            this.eventDrivenLoading = eventDriven;
+            return this;
+        }
+
+        @Override
+        public Builder keepExportsOnReload(boolean keep) {
+            this.keepExportsOnReload = keep;
+            return this;
+        }
+
+        @Override
+        public Builder exportNameLocale(Locale locale) {
+            this.exportNameLocale = Objects.requireNonNull(locale, "locale");
+            return this;
+        }
+
+        @Override
+        public Builder exportSnapshot(Path file) {
+            this.exportSnapshot = Objects.requireNonNull(file, "file");
+            return this;
+        }
+
+        @Override
+        public Builder engineProvider(ScriptEngineProvider provider) {
+            this.engineProvider = Objects.requireNonNull(provider, "provider");
+            return this;
+        }
+
         @Override
         public Builder pollRate(long time, TimeUnit unit) {
             this.pollRate = new Duration(time, Objects.requireNonNull(unit, "unit"));
             return this;
         }
 
+        @Override
+        public Builder preloadParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism < 1");
+            }
+            this.preloadParallelism = parallelism;
+            return this;
+        }
+
+        @Override
+        public Builder enginePoolSize(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("size < 1");
+            }
+            this.enginePoolSize = size;
+            return this;
+        }
+
+        @Override
+        public Builder compiledScriptCacheSize(int size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("size < 0");
+            }
+            this.compiledScriptCacheSize = size;
+            return this;
+        }
+
+        @Override
+        public Builder reloadDebounce(long time, TimeUnit unit) {
+            if (time < 0) {
+                throw new IllegalArgumentException("time < 0");
+            }
+            this.reloadDebounce = new Duration(time, Objects.requireNonNull(unit, "unit"));
+            return this;
+        }
+
         @Override
         public EnvironmentSettings.Builder initScript(String path) {
             this.initScript = Objects.requireNonNull(path, "path");
@@ -0,0 +1,126 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.internal;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Blocks on a {@link WatchService} and submits a load task whenever a change
+ * is signalled, instead of polling at a fixed rate.
+ */
+final class FilesystemWatcher implements Runnable, AutoCloseable {
+
+    /** The watch service to block on */
+    private final WatchService watchService;
+
+    /** The handler for signalled keys */
+    private final Consumer<WatchKey> keyHandler;
+
+    /** The time to wait for further events before submitting the load task, in nanoseconds */
+    private final long quietPeriod;
+
+    /** The maximum time to keep waiting for further events, in nanoseconds */
+    private final long maxDelay;
+
+    /** The executor to submit the load task to */
+    private final Executor executor;
+
+    /** The load task */
+    private final Runnable task;
+
+    /** The thread blocking on the watch service */
+    private final Thread thread;
+
+    /** If the load task has been submitted, but hasn't started running yet */
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+
+    private volatile boolean running = true;
+
+    FilesystemWatcher(WatchService watchService, Consumer<WatchKey> keyHandler, long quietPeriod, long maxDelay, Executor executor, Runnable task) {
+        this.watchService = watchService;
+        this.keyHandler = keyHandler;
+        this.quietPeriod = quietPeriod;
+        this.maxDelay = maxDelay;
+        this.executor = executor;
+        this.task = task;
+        this.thread = new Thread(this, "scriptcontroller-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Submits the load task, regardless of whether any filesystem changes
+     * have been signalled.
+     *
+     * <p>Does nothing if the task has already been submitted, and hasn't
+     * started running yet.</p>
+     */
+    public void wakeup() {
+        if (this.running && this.pending.compareAndSet(false, true)) {
+            this.executor.execute(() -> {
+                this.pending.set(false);
+                this.task.run();
+            });
+        }
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                WatchKey key = this.watchService.take();
+                this.keyHandler.accept(key);
+
+                // keep handling events until none have been signalled for the quiet
+                // period, or the maximum delay has passed since the first of them
+                long start = System.nanoTime();
+                long remaining;
+                while ((remaining = this.maxDelay - (System.nanoTime() - start)) > 0
+                        && (key = this.watchService.poll(Math.min(this.quietPeriod, remaining), TimeUnit.NANOSECONDS)) != null) {
+                    this.keyHandler.accept(key);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+            wakeup();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        this.thread.interrupt();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.script.Bindings;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import javax.script.SimpleScriptContext;
+
+/**
+ * The default type and package imports of an environment, resolved once per
+ * engine and shared by every script pinned to that engine.
+ *
+ * <p>Used as the global scope of the scripts, layered over the bindings
+ * shared by the environment, which take precedence. Other names are
+ * resolved to types (via {@code Java.type}) when first read, against the
+ * type imports and then the package imports, and the result is cached for
+ * all scripts using the engine. Types are resolved by the engine of the
+ * script reading them, so each engine is still only used by one script at
+ * a time.</p>
+ *
+ * <p>Scripts read the global scope through a hook on their global object
+ * installed by the {@link ScriptPrelude}, so the types are also visible
+ * from functions called after the script has been evaluated.</p>
+ */
+final class ImportedTypes extends SimpleBindings {
+
+    /** The maximum number of names remembered as not being types */
+    private static final int MAX_MISSING = 1024;
+
+    /**
+     * Creates the imported types for each engine of an environment, if the
+     * engines support sharing resolved types between script contexts.
+     *
+     * @param engines the engines
+     * @param parent the bindings shared by the environment
+     * @param classLoader the class loader used to find types
+     * @param settings the environment settings
+     * @return the imported types, indexed by engine, or null if they can't be shared
+     */
+    static ImportedTypes[] create(ScriptEnginePool engines, Bindings parent, ClassLoader classLoader, EnvironmentSettingsImpl settings) {
+        // types are only resolved on demand if the engine reads the global scope
+        if (!engines.readsGlobalScope()) {
+            return null;
+        }
+
+        ImportedTypes[] importedTypes = new ImportedTypes[engines.size()];
+        try {
+            for (int i = 0; i < importedTypes.length; i++) {
+                ScriptEngine engine = engines.get(i);
+                if (!(engine instanceof Invocable)) {
+                    return null;
+                }
+
+                Object javaType = engine.eval("(function(name) { return Java.type(name); })", newContext(engine));
+                importedTypes[i] = new ImportedTypes(new ConcurrentHashMap<>(), parent, (Invocable) engine, javaType, classLoader, settings.getTypeImports(), settings.getPackageImports());
+            }
+
+            // check a type resolved in one context can be used in another
+            ScriptEngine engine = engines.get(0);
+            ScriptContext context = newContext(engine);
+            context.setAttribute("__importedType", importedTypes[0].load(Object.class.getName()), ScriptContext.ENGINE_SCOPE);
+            if (engine.eval("new __importedType()", context) == null) {
+                return null;
+            }
+            return importedTypes;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static ScriptContext newContext(ScriptEngine engine) {
+        ScriptContext context = new SimpleScriptContext();
+        context.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+        return context;
+    }
+
+    /** The bindings shared by the environment */
+    private final Bindings parent;
+
+    /** The resolved types, keyed by name */
+    private final ConcurrentHashMap<String, Object> resolved;
+
+    /** The engine used to call the Java.type function */
+    private final Invocable engine;
+
+    /** A function which calls Java.type */
+    private final Object javaType;
+
+    private final ClassLoader classLoader;
+
+    /** The imported types, keyed by simple name */
+    private final Map<String, String> typeImports = new HashMap<>();
+
+    /** The imported packages */
+    private final String[] packageImports;
+
+    /** Names which could not be resolved, cleared when full */
+    private final Set<String> missing = ConcurrentHashMap.newKeySet();
+
+    private ImportedTypes(ConcurrentHashMap<String, Object> resolved, Bindings parent, Invocable engine, Object javaType, ClassLoader classLoader, Set<String> typeImports, Set<String> packageImports) {
+        super(resolved);
+        this.parent = parent;
+        this.resolved = resolved;
+        this.engine = engine;
+        this.javaType = javaType;
+        this.classLoader = classLoader;
+        for (String type : typeImports) {
+            this.typeImports.put(type.substring(type.lastIndexOf('.') + 1), type);
+        }
+        this.packageImports = packageImports.toArray(new String[0]);
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object value = this.parent.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        Object type = this.resolved.get(key);
+        if (type == null && key instanceof String) {
+            type = resolve((String) key);
+        }
+        return type;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    private Object resolve(String name) {
+        if (this.missing.contains(name)) {
+            return null;
+        }
+
+        String className = this.typeImports.get(name);
+        if (className == null) {
+            className = findInPackages(name);
+        }
+
+        Object type = null;
+        if (className != null) {
+            try {
+                type = load(className);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (type == null) {
+            // any name a script reads which isn't otherwise bound ends up here,
+            // so only remember a limited number of them
+            if (this.missing.size() >= MAX_MISSING) {
+                this.missing.clear();
+            }
+            this.missing.add(name);
+            return null;
+        }
+
+        Object existing = this.resolved.putIfAbsent(name, type);
+        return existing != null ? existing : type;
+    }
+
+    private String findInPackages(String name) {
+        for (String packageName : this.packageImports) {
+            String className = packageName + "." + name;
+            try {
+                Class.forName(className, false, this.classLoader);
+                return className;
+            } catch (ClassNotFoundException | LinkageError e) {
+                // not in this package
+            }
+        }
+        return null;
+    }
+
+    private Object load(String className) throws ScriptException, NoSuchMethodException {
+        return this.engine.invokeMethod(this.javaType, "call", null, className);
+    }
+}
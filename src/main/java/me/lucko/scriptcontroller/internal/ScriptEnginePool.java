@@ -0,0 +1,135 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.internal;
+
+import me.lucko.scriptcontroller.bindings.LazyBindings;
+import me.lucko.scriptcontroller.environment.engine.ScriptEngineProvider;
+
+import java.nio.file.Path;
+
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import javax.script.SimpleScriptContext;
+
+/**
+ * A fixed set of script engines used by an environment.
+ *
+ * <p>Each script is pinned to one engine, chosen by its path, so reloads of
+ * a script always use the same engine and can reuse its compiled units.
+ * Scripts pinned to different engines can be evaluated concurrently, even
+ * if the engine itself is not thread safe.</p>
+ *
+ * <p>This only applies to evaluation by the loader. Functions the scripts
+ * hand out (listeners, scheduled tasks, ...) are called directly by the
+ * host application, outside of the pool, so calls into scripts sharing a
+ * non thread safe engine are not serialized - the host has to confine
+ * them to one thread at a time.</p>
+ */
+final class ScriptEnginePool {
+
+    private final ScriptEngine[] engines;
+
+    /**
+     * If scripts pinned to the same engine can be evaluated concurrently.
+     *
+     * <p>Only used to group the scripts evaluated during preload.</p>
+     */
+    private final boolean threadSafe;
+
+    /** If the engines resolve unbound names by reading the global scope of the context */
+    private final boolean readsGlobalScope;
+
+    ScriptEnginePool(ScriptEngineProvider provider, ClassLoader classLoader, int size) {
+        this.engines = new ScriptEngine[size];
+        for (int i = 0; i < size; i++) {
+            this.engines[i] = provider.createEngine(classLoader);
+        }
+
+        // a null THREADING parameter means the engine is not thread safe, any
+        // other value allows concurrent evaluation in separate contexts.
+        this.threadSafe = this.engines[0].getFactory().getParameter("THREADING") != null;
+        this.readsGlobalScope = readsGlobalScope(this.engines[0]);
+    }
+
+    private static boolean readsGlobalScope(ScriptEngine engine) {
+        // the probe is only visible through get, not by iterating the bindings
+        Bindings parent = new SimpleBindings();
+        parent.put("__globalScopeProbe", Boolean.TRUE);
+        Bindings globalScope = LazyBindings.create(parent);
+
+        ScriptContext context = new SimpleScriptContext();
+        context.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+        context.setBindings(globalScope, ScriptContext.GLOBAL_SCOPE);
+        try {
+            return Boolean.TRUE.equals(engine.eval("typeof __globalScopeProbe !== 'undefined'", context));
+        } catch (ScriptException e) {
+            return false;
+        }
+    }
+
+    int size() {
+        return this.engines.length;
+    }
+
+    ScriptEngine get(int index) {
+        return this.engines[index];
+    }
+
+    /**
+     * Gets the index of the engine the script at the given path is pinned to.
+     *
+     * @param path the path of the script
+     * @return the engine index
+     */
+    int indexOf(Path path) {
+        return (path.normalize().hashCode() & Integer.MAX_VALUE) % this.engines.length;
+    }
+
+    boolean isThreadSafe() {
+        return this.threadSafe;
+    }
+
+    /**
+     * Gets if the engines resolve names which are not bound in the engine
+     * scope by reading the global scope of the context when the name is used.
+     *
+     * <p>Nashorn does, although only whilst a script is being evaluated.
+     * GraalJS instead copies the entries of the global scope up front, which
+     * skips lazy bindings and parent scopes. Either way, the
+     * {@link ScriptPrelude} makes the global scope visible from the global
+     * object of each script - through a hook for names which aren't defined
+     * if the engine reads the global scope, and otherwise through an
+     * accessor for each name.</p>
+     *
+     * @return if the global scope is read by the engines
+     */
+    boolean readsGlobalScope() {
+        return this.readsGlobalScope;
+    }
+}
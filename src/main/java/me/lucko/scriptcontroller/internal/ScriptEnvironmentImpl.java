@@ -25,16 +25,22 @@
 
 package me.lucko.scriptcontroller.internal;
 
+import me.lucko.scriptcontroller.bindings.BindingsBuilder;
+import me.lucko.scriptcontroller.bindings.BindingsSupplier;
+import me.lucko.scriptcontroller.bindings.LazyBindings;
 import me.lucko.scriptcontroller.environment.ScriptEnvironment;
 import me.lucko.scriptcontroller.environment.loader.EnvironmentScriptLoader;
 import me.lucko.scriptcontroller.environment.registry.ScriptRegistry;
 import me.lucko.scriptcontroller.exports.ExportRegistry;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
+import javax.script.Bindings;
 
 class ScriptEnvironmentImpl implements ScriptEnvironment {
 
@@ -53,14 +59,29 @@ class ScriptEnvironmentImpl implements ScriptEnvironment {
     /** The script export registry */
     private final ExportRegistry exportRegistry;
 
-    /** The script engine */
-    private final ScriptEngine scriptEngine;
+    /** The script engines */
+    private final ScriptEnginePool enginePool;
+
+    /** The cache of compiled scripts */
+    private final CompiledScriptCacheImpl compiledScriptCache;
+
+    /** The bindings shared by every script, in the global scope of their contexts */
+    private final LazyBindings globalBindings;
+
+    /** The default imports resolved by each engine, layered over the global bindings, or null */
+    private final ImportedTypes[] importedTypes;
+
+    /** The bindings suppliers which are called for each script */
+    private final List<BindingsSupplier> scriptBindings = new ArrayList<>();
+
+    /** The prelude evaluated before each script */
+    private final ScriptPrelude prelude;
 
     /** The script loader operating within this environment */
-    private final EnvironmentScriptLoader loader;
+    private final ScriptLoaderImpl loader;
 
-    /** An autoclosable which represents the repeating load task */
-    private final AutoCloseable loaderPollingTask;
+    /** An autoclosable which represents the repeating or event driven load task */
+    private final AutoCloseable loaderTask;
 
     public ScriptEnvironmentImpl(ScriptControllerImpl controller, Path directory, EnvironmentSettingsImpl settings) {
         this.controller = controller;
@@ -68,19 +89,45 @@ class ScriptEnvironmentImpl implements ScriptEnvironment {
         this.settings = settings;
 
         this.scriptRegistry = ScriptRegistry.create();
-        this.exportRegistry = ExportRegistry.create();
-        this.scriptEngine = new ScriptEngineManager(ScriptEnvironmentImpl.class.getClassLoader()).getEngineByName("nashorn");
+        Locale exportNameLocale = settings.getExportNameLocale();
+        this.exportRegistry = exportNameLocale == null ? ExportRegistry.create() : ExportRegistry.create(exportNameLocale);
+        ClassLoader classLoader = ScriptEnvironmentImpl.class.getClassLoader();
+        this.enginePool = new ScriptEnginePool(settings.getEngineProvider(), classLoader, settings.getEnginePoolSize());
+
+        // default imports are resolved once per engine and shared via the global scope, if the engine allows
+        this.globalBindings = LazyBindings.create(null);
+        this.importedTypes = ImportedTypes.create(this.enginePool, this.globalBindings, classLoader, settings);
+        this.prelude = new ScriptPrelude(this.enginePool, settings, this.importedTypes != null);
+
+        // static bindings are supplied once, into the shared global scope
+        BindingsBuilder globals = BindingsBuilder.wrap(this.globalBindings)
+                .put("rsd", directory.normalize().toString().replace("\\", "/") + "/"); // the root scripts directory
+        for (BindingsSupplier supplier : settings.getBindings()) {
+            if (supplier.isStatic()) {
+                supplier.supplyBindings(null, globals);
+            } else {
+                this.scriptBindings.add(supplier);
+            }
+        }
+
+        this.compiledScriptCache = new CompiledScriptCacheImpl(this.enginePool, settings.getCompiledScriptCacheSize());
         try {
             this.loader = new ScriptLoaderImpl(this);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        restoreExports();
         this.loader.watch(settings.getInitScript());
         this.loader.preload();
 
-        // setup a ticking task on the environments loader
-        Duration rate = settings.getPollRate();
-        this.loaderPollingTask = settings.getLoadExecutor().scheduleAtFixedRate(this.loader, rate.getDuration(), rate.getUnit());
+        if (settings.isEventDrivenLoading()) {
+            // run the environments loader whenever a change is signalled
+            this.loaderTask = this.loader.startWatching(settings.getLoadExecutor());
+        } else {
+            // setup a ticking task on the environments loader
+            Duration rate = settings.getPollRate();
+            this.loaderTask = settings.getLoadExecutor().scheduleAtFixedRate(this.loader, rate.getDuration(), rate.getUnit());
+        }
     }
 
     @Override
@@ -103,8 +150,35 @@ class ScriptEnvironmentImpl implements ScriptEnvironment {
         return this.loader;
     }
 
-    public ScriptEngine getScriptEngine() {
-        return this.scriptEngine;
+    @Override
+    public CompiledScriptCacheImpl getCompiledScriptCache() {
+        return this.compiledScriptCache;
+    }
+
+    public ScriptPrelude getPrelude() {
+        return this.prelude;
+    }
+
+    public LazyBindings getGlobalBindings() {
+        return this.globalBindings;
+    }
+
+    /**
+     * Gets the global scope for scripts pinned to the given engine.
+     *
+     * @param engineIndex the index of the engine
+     * @return the global scope
+     */
+    public Bindings getGlobalScope(int engineIndex) {
+        return this.importedTypes != null ? this.importedTypes[engineIndex] : this.globalBindings;
+    }
+
+    public List<BindingsSupplier> getScriptBindings() {
+        return this.scriptBindings;
+    }
+
+    public ScriptEnginePool getEnginePool() {
+        return this.enginePool;
     }
 
     @Override
@@ -117,10 +191,55 @@ class ScriptEnvironmentImpl implements ScriptEnvironment {
         return this.exportRegistry;
     }
 
+    /**
+     * Restores the exports from the snapshot file, if one is configured
+     * and exists.
+     */
+    private void restoreExports() {
+        Path snapshot = this.settings.getExportSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+
+        Path file = this.directory.resolve(snapshot);
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try {
+            int count = this.exportRegistry.restore(file);
+            this.controller.getLogger().info("[LOADER] Restored " + count + " export(s) from " + file);
+        } catch (IOException e) {
+            this.controller.getLogger().warning("[LOADER] Unable to restore exports from " + file);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the exports to the snapshot file, if one is configured.
+     */
+    private void snapshotExports() {
+        Path snapshot = this.settings.getExportSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+
+        Path file = this.directory.resolve(snapshot);
+        try {
+            this.exportRegistry.snapshot(file);
+        } catch (IOException e) {
+            this.controller.getLogger().warning("[LOADER] Unable to write exports to " + file);
+            e.printStackTrace();
+        }
+    }
+
     @Override
     public void close() throws Exception {
-        this.loaderPollingTask.close();
+        this.loaderTask.close();
         this.loader.close();
+        // snapshot before closing the scripts, which releases the exports they own
+        snapshotExports();
         this.scriptRegistry.close();
+        this.compiledScriptCache.invalidateAll();
     }
 }
@@ -27,65 +27,30 @@ package me.lucko.scriptcontroller.internal;
 
 import me.lucko.scriptcontroller.bindings.BindingsBuilder;
 import me.lucko.scriptcontroller.bindings.BindingsSupplier;
+import me.lucko.scriptcontroller.bindings.LazyBindings;
 import me.lucko.scriptcontroller.closable.CompositeAutoClosable;
 import me.lucko.scriptcontroller.environment.loader.DelegateScriptLoader;
 import me.lucko.scriptcontroller.environment.loader.ScriptLoader;
 import me.lucko.scriptcontroller.environment.script.Script;
+import me.lucko.scriptcontroller.exports.ExportRegistry;
 import me.lucko.scriptcontroller.logging.ScriptLogger;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.function.Consumer;
-import java.util.function.Function;
 
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
+import javax.script.ScriptException;
 import javax.script.SimpleScriptContext;
 
 class ScriptImpl implements Script, Runnable {
 
-    /**
-     * Header which is evaluated before the content of the actual script is
-     * loaded. It...
-     *
-     * Loads the nashorn mozilla_compat script, which provides importClass and
-     * importPackage functions (among other things)
-     *
-     * Redefines the load function to prepend the loader directory and register
-     * loaded scripts as dependencies
-     */
-    private static final String GLOBAL_SCRIPT_HEADER =
-            /*
-            load("nashorn:mozilla_compat.js");
-            var __load = load;
-            var load = function(file) {
-                __load(rsd + file);
-                depend(file);
-            };
-             */
-            "load(\"nashorn:mozilla_compat.js\");\r\n" +
-            "var __load = load;\r\n" +
-            "var load = function(file) {\r\n" +
-            "    __load(rsd + file);\r\n" +
-            "    depend(file);\r\n" +
-            "};";
-
-    /**
-     * Function which returns the string evaluate in order to load a js file at
-     * the given path
-     */
-    private static final Function<Path, String> LOAD_FUNCTION = path -> "__load(\"" + path.toString().replace("\\", "/") + "\");";
-
-    // functions to import packages / classes
-    private static final Function<String, String> IMPORT_PACKAGE = pkg -> "importPackage(\"" + pkg + "\");";
-    private static final Function<String, String> IMPORT_TYPE = type -> {
-        String name = type.substring(type.lastIndexOf('.') + 1);
-        return "var " + name + " = Java.type(\"" + type + "\")";
-    };
-
     private final ScriptLoaderImpl loader;
 
     /** The name of this script */
@@ -103,6 +68,12 @@ class ScriptImpl implements Script, Runnable {
     /** The terminable registry used by this script */
     private final CompositeAutoClosable compositeAutoClosable = CompositeAutoClosable.create();
 
+    /** The export registry used by this script, which records the exports it owns */
+    private final ExportRegistry exports;
+
+    /** The index of the engine this script is pinned to */
+    private final int engineIndex;
+
     /** The scripts dependencies */
     private final Set<Path> depends = new HashSet<>();
 
@@ -119,6 +90,9 @@ class ScriptImpl implements Script, Runnable {
 
         this.delegateLoader = new DelegateScriptLoader(loader);
         this.logger = ScriptLogger.create(loader.getEnvironment().getController().getLogger(), this);
+        // owned by path rather than by this instance, so ownership can be kept across reloads
+        this.exports = loader.getEnvironment().getExportRegistry().ownedBy(path);
+        this.engineIndex = loader.getEnvironment().getEnginePool().indexOf(path);
         this.depends.add(this.path);
     }
 
@@ -146,50 +120,67 @@ class ScriptImpl implements Script, Runnable {
     public void run() {
         try {
             Path loaderDirectory = this.loader.getEnvironment().getDirectory().normalize();
-            ScriptEngine scriptEngine = this.loader.getEnvironment().getScriptEngine();
+            ScriptEngine scriptEngine = this.loader.getEnvironment().getEnginePool().get(this.engineIndex);
+            CompiledScriptCacheImpl compiledScriptCache = this.loader.getEnvironment().getCompiledScriptCache();
+
+            // create a new script context
+            ScriptContext context = new SimpleScriptContext();
 
-            // create bindings
-            BindingsBuilder bindings = BindingsBuilder.wrap(scriptEngine.createBindings());
+            // create bindings - lazy bindings are added to a per-script scope, layered over the environments shared scope
+            LazyBindings scriptScope = LazyBindings.create(this.loader.getEnvironment().getGlobalScope(this.engineIndex));
+            BindingsBuilder bindings = BindingsBuilder.wrap(scriptEngine.createBindings(), scriptScope);
 
             // provide an export for various script attributes
             bindings.put("loader", this.delegateLoader)
                     .put("closableRegistry", this.compositeAutoClosable)
-                    .put("exports", this.loader.getEnvironment().getExportRegistry())
+                    .put("exports", this.exports)
                     .put("logger", this.logger)
                     .put("cwd", this.path.normalize().toString().replace("\\", "/")) // the path of the script file (current working directory)
-                    .put("rsd", loaderDirectory.toString().replace("\\", "/") + "/") // the root scripts directory
-                    .put("depend", (Consumer<String>) this::depend); // function to depend on another script
-
-            // accumulate global bindings
-            Set<BindingsSupplier> systemBindings = this.loader.getEnvironment().getSettings().getBindings();
-            for (BindingsSupplier supplier : systemBindings) {
+                    .put("depend", (Consumer<String>) this::depend) // function to depend on another script
+                    .put("__loadCompiled", (Consumer<String>) file -> { // function to evaluate a file via the compiled script cache
+                        try {
+                            compiledScriptCache.eval(this.engineIndex, Paths.get(file), context);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } catch (ScriptException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+
+            // accumulate per-script bindings - static bindings are already in the global scope
+            for (BindingsSupplier supplier : this.loader.getEnvironment().getScriptBindings()) {
                 supplier.supplyBindings(this, bindings);
             }
 
-            // create a new script context, and attach our bindings
-            ScriptContext context = new SimpleScriptContext();
+            // expose the global scope to the prelude, which makes it visible from the scripts global object
+            bindings.put("__globalScope", scriptScope);
+            if (!this.loader.getEnvironment().getEnginePool().readsGlobalScope()) {
+                // engines which don't read the global scope themselves need the names up front
+                Set<String> names = new HashSet<>(this.loader.getEnvironment().getGlobalBindings().keySet());
+                names.addAll(scriptScope.keySet());
+                bindings.put("__globalNames", names.toArray(new String[0]));
+            }
+
+            // attach our bindings to the context
             context.setBindings(bindings.build(), ScriptContext.ENGINE_SCOPE);
+            context.setBindings(scriptScope, ScriptContext.GLOBAL_SCOPE);
 
-            // evaluate the header
-            scriptEngine.eval(GLOBAL_SCRIPT_HEADER, context);
-
-            // apply default package/type imports
-            for (String packageName : this.loader.getEnvironment().getSettings().getPackageImports()) {
-                scriptEngine.eval(IMPORT_PACKAGE.apply(packageName), context);
-            }
-            for (String className : this.loader.getEnvironment().getSettings().getTypeImports()) {
-                scriptEngine.eval(IMPORT_TYPE.apply(className), context);
-            }
+            // evaluate the header & default package/type imports
+            this.loader.getEnvironment().getPrelude().eval(this.engineIndex, context);
 
             // resolve the load path, relative to the loader directory.
             Path loadPath = loaderDirectory.resolve(this.path);
-            scriptEngine.eval(LOAD_FUNCTION.apply(loadPath), context);
+            compiledScriptCache.eval(this.engineIndex, loadPath, context);
         } catch (Throwable t) {
             this.logger.error("Exception occurred whilst loading script (" + this.path + ")");
             t.printStackTrace();
         }
     }
 
+    int getEngineIndex() {
+        return this.engineIndex;
+    }
+
     @Override
     public Set<Path> getDependencies() {
         return Collections.unmodifiableSet(this.depends);
@@ -207,11 +198,28 @@ class ScriptImpl implements Script, Runnable {
         }
 
         this.depends.add(path);
+
+        // only index dependencies of the currently registered instance
+        if (this.loader.getEnvironment().getScriptRegistry().getScript(this.path) == this) {
+            this.loader.getDependencyIndex().add(this.path, path);
+        }
     }
 
     @Override
     public void close() throws Exception {
-        this.delegateLoader.close();
-        this.compositeAutoClosable.close();
+        try {
+            this.delegateLoader.close();
+            this.compositeAutoClosable.close();
+        } finally {
+            // listeners subscribed by this instance are removed even if its exports are kept
+            this.exports.close();
+
+            // if another instance has been registered in our place, we're being reloaded
+            Script current = this.loader.getEnvironment().getScriptRegistry().getScript(this.path);
+            boolean reloading = current != null && current != this;
+            if (!reloading || !this.loader.getEnvironment().getSettings().isKeepExportsOnReload()) {
+                this.loader.getEnvironment().getExportRegistry().release(this.path);
+            }
+        }
     }
 }
@@ -39,16 +39,19 @@ import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -70,16 +73,40 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
     private final List<WatchKey> watchKeys = new CopyOnWriteArrayList<>();
 
     /**
-     * The script files currently being monitored by this instance.
+     * The script files currently being monitored by this instance, mapped to
+     * the number of times they have been watched.
      * These paths are relative to the script directory
      */
-    private List<Path> files = new ArrayList<>();
+    private final Map<Path, Integer> files = new HashMap<>();
+
+    /**
+     * The paths which have been watched or unwatched since the last cycle.
+     * These paths are relative to the script directory
+     */
+    private final Set<Path> dirty = new LinkedHashSet<>();
+
+    /**
+     * The paths whose content should be compared in the next cycle, as
+     * changes to them may have been lost.
+     * These paths are relative to the script directory
+     */
+    private final Set<Path> stale = new LinkedHashSet<>();
+
+    /** The reverse index of script dependencies */
+    private final DependencyIndex dependencyIndex = new DependencyIndex();
+
+    /** Coalesces filesystem events */
+    private final ChangeDebouncer debouncer;
+
+    /** The event driven watcher, if the loader isn't polled */
+    private FilesystemWatcher watcher = null;
 
     /** The instance mutex */
     private final ReentrantLock lock = new ReentrantLock();
 
     public ScriptLoaderImpl(ScriptEnvironmentImpl environment) throws IOException {
         this.environment = environment;
+        this.debouncer = new ChangeDebouncer(environment.getSettings().getReloadDebounce());
 
         // init file watcher
         this.watchService = environment.getDirectory().getFileSystem().newWatchService();
@@ -96,13 +123,40 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
         return this.environment;
     }
 
+    public DependencyIndex getDependencyIndex() {
+        return this.dependencyIndex;
+    }
+
+    /**
+     * Starts a {@link FilesystemWatcher} which submits this loader to the
+     * given executor whenever a change occurs.
+     *
+     * @param executor the executor to run the loader on
+     * @return an {@link AutoCloseable} which stops the watcher
+     */
+    public AutoCloseable startWatching(Executor executor) {
+        this.lock.lock();
+        try {
+            this.watcher = new FilesystemWatcher(this.watchService, this::pollEvents, this.debouncer.getQuietPeriodNanos(),
+                    this.debouncer.getMaxWaitNanos(), executor, this);
+            this.watcher.start();
+            return this.watcher;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
     @Override
     public void watchAll(Collection<String> paths) {
         this.lock.lock();
         try {
             for (String s : paths) {
-                this.files.add(Paths.get(s));
+                Path path = Paths.get(s);
+                if (this.files.merge(path, 1, Integer::sum) == 1) {
+                    this.dirty.add(path);
+                }
             }
+            wakeupWatcher();
         } finally {
             this.lock.unlock();
         }
@@ -113,28 +167,58 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
         this.lock.lock();
         try {
             for (String s : paths) {
-                this.files.remove(Paths.get(s));
+                Path path = Paths.get(s);
+                // only stop monitoring once every watcher has unwatched the path
+                if (this.files.computeIfPresent(path, (p, count) -> count == 1 ? null : count - 1) == null) {
+                    this.dirty.add(path);
+                }
             }
+            wakeupWatcher();
         } finally {
             this.lock.unlock();
         }
     }
 
+    private void wakeupWatcher() {
+        // changes to the watched files aren't signalled by the filesystem,
+        // so make sure they're picked up by the next cycle. the watcher only
+        // queues one cycle at a time, so a script watching many paths doesn't
+        // cause a cycle per call.
+        if (this.watcher != null) {
+            this.watcher.wakeup();
+        }
+    }
+
     @Override
     public void preload() {
-        // keep running until we stop loading files
-        int filesLength;
-        do {
-            filesLength = this.files.size();
-            reload(true);
-        } while (filesLength != this.files.size());
+        // if configured, run the scripts discovered in each pass concurrently.
+        // scripts are only discovered once the script watching them has been
+        // run, so each pass only contains scripts whose watcher has completed.
+        // scripts pinned to the same engine are never run concurrently unless
+        // the engine is thread safe - see runAll. by default the engine pool
+        // has an engine per preload thread, so each worker has its own engine.
+        int parallelism = this.environment.getSettings().getPreloadParallelism();
+        ExecutorService pool = parallelism > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+
+        try {
+            // keep running until we stop loading files
+            int filesLength;
+            do {
+                filesLength = this.files.size();
+                reload(true, pool);
+            } while (filesLength != this.files.size());
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
     }
 
     @Override
     public void run() {
         this.lock.lock();
         try {
-            reload(false);
+            reload(false, null);
         } catch (Throwable t) {
             t.printStackTrace();
         } finally {
@@ -142,7 +226,7 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
         }
     }
 
-    private void reload(boolean runImmediately) {
+    private void reload(boolean runImmediately, ExecutorService pool) {
         ScriptRegistry registry = this.environment.getScriptRegistry();
         SystemLogger logger = this.environment.getController().getLogger();
 
@@ -151,9 +235,13 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
         Set<Path> toLoad = new LinkedHashSet<>();
         Set<Script> toUnload = new LinkedHashSet<>();
 
-        checkWatched(toLoad, toUnload);
-        checkRegistry(toUnload);
+        // only the paths which have been (un)watched since the last cycle need
+        // to be checked - all other changes are signalled by the filesystem.
+        Set<Path> dirty = drain(this.dirty);
+        checkWatched(dirty, toLoad, toUnload);
+        checkRegistry(dirty, toUnload);
         checkFilesystem(toLoad, toUnload, toReload);
+        checkStale(drain(this.stale), toLoad, toUnload, toReload);
 
         // handle reloading first
         // create a reload queue - by taking the paths to reload, and then
@@ -177,6 +265,7 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
 
             // since we're creating a new script instance, we need to schedule an unload for the old one.
             toTerminate.add(oldScript);
+            this.dependencyIndex.removeAll(oldScript);
 
             // init a new script instance
             ScriptImpl newScript = new ScriptImpl(this, path);
@@ -205,6 +294,8 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
         for (Script s : toUnload) {
             registry.unregister(s);
             toTerminate.add(s);
+            this.dependencyIndex.removeAll(s);
+            this.environment.getCompiledScriptCache().invalidate(this.environment.getDirectory().resolve(s.getPath()));
             logger.info("[LOADER] Unloaded script: " + pathToString(s.getPath()));
         }
 
@@ -221,17 +312,90 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
                     .closeAndReportExceptions();
 
             // init new/reloaded scripts
-            for (ScriptImpl script : toRun) {
-                try {
-                    script.run();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+            runAll(toRun, pool);
         });
     }
 
-    private void checkWatched(Set<Path> toLoad, Set<Script> toUnload) {
+    /**
+     * Runs the given scripts, either sequentially on the calling thread, or
+     * concurrently using the given pool.
+     *
+     * <p>If the environments engines are not thread safe, scripts pinned to
+     * the same engine are run sequentially.</p>
+     *
+     * @param scripts the scripts to run
+     * @param pool the pool to run scripts on, or null to run sequentially
+     */
+    private void runAll(Collection<ScriptImpl> scripts, ExecutorService pool) {
+        if (pool == null) {
+            for (ScriptImpl script : scripts) {
+                runSafely(script);
+            }
+            return;
+        }
+
+        Collection<? extends Collection<ScriptImpl>> groups;
+        if (this.environment.getEnginePool().isThreadSafe()) {
+            groups = scripts.stream().map(Collections::singleton).collect(Collectors.toList());
+        } else {
+            groups = scripts.stream().collect(Collectors.groupingBy(ScriptImpl::getEngineIndex)).values();
+        }
+
+        // nothing to run concurrently, e.g. a single engine which isn't thread safe
+        if (groups.size() == 1) {
+            groups.iterator().next().forEach(ScriptLoaderImpl::runSafely);
+            return;
+        }
+
+        // submit each group to the pool, then wait for them all to complete
+        CompletableFuture<?>[] futures = groups.stream()
+                .map(group -> CompletableFuture.runAsync(() -> group.forEach(ScriptLoaderImpl::runSafely), pool))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+    }
+
+    private static void runSafely(ScriptImpl script) {
+        try {
+            script.run();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Set<Path> drain(Set<Path> paths) {
+        this.lock.lock();
+        try {
+            if (paths.isEmpty()) {
+                return Collections.emptySet();
+            }
+            Set<Path> drained = new LinkedHashSet<>(paths);
+            paths.clear();
+            return drained;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Marks every watched, registered & depended on path as dirty and stale,
+     * so they are all rechecked in the next cycle, and their content is
+     * compared with when they were last evaluated.
+     *
+     * <p>Used when filesystem events may have been lost.</p>
+     */
+    private void markAllDirty() {
+        this.lock.lock();
+        try {
+            this.dirty.addAll(this.files.keySet());
+            this.dirty.addAll(this.environment.getScriptRegistry().getAll().keySet());
+            this.stale.addAll(this.dirty);
+            this.stale.addAll(this.dependencyIndex.getDependencies());
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void checkWatched(Set<Path> dirty, Set<Path> toLoad, Set<Script> toUnload) {
         Path directory = this.environment.getDirectory();
         ScriptRegistry registry = this.environment.getScriptRegistry();
 
@@ -239,7 +403,11 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
         // effectively: ensure that for all files being watched, if the file
         // exists it's loaded. (this check covers new scripts being watched at runtime)
         // additionally, ensure that watched scripts still exist, otherwise unload them.
-        for (Path path : this.files) {
+        for (Path path : dirty) {
+            if (!this.files.containsKey(path)) {
+                continue;
+            }
+
             Script script = registry.getScript(path);
 
             if (Files.exists(directory.resolve(path))) {
@@ -256,19 +424,19 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
         }
     }
 
-    private void checkRegistry(Set<Script> toUnload) {
+    private void checkRegistry(Set<Path> dirty, Set<Script> toUnload) {
         ScriptRegistry registry = this.environment.getScriptRegistry();
 
         // unload scripts which are in the registry, but were unwatched since the last check
-        for (Map.Entry<Path, Script> script : registry.getAll().entrySet()) {
-            if (!this.files.contains(script.getKey())) {
-                toUnload.add(script.getValue());
+        for (Path path : dirty) {
+            Script script = registry.getScript(path);
+            if (script != null && !this.files.containsKey(path)) {
+                toUnload.add(script);
             }
         }
     }
 
     private void checkFilesystem(Set<Path> toLoad, Set<Script> toUnload, Set<Path> toReload) {
-        Path directory = this.environment.getDirectory();
         ScriptRegistry registry = this.environment.getScriptRegistry();
         SystemLogger logger = this.environment.getController().getLogger();
 
@@ -277,54 +445,56 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
         Set<Path> tryUnload = new HashSet<>();
 
         // poll the filesystem for changes
-        Iterator<WatchKey> keys = this.watchKeys.iterator();
-        while (keys.hasNext()) {
-            WatchKey key = keys.next();
-            for (WatchEvent<?> event : key.pollEvents()) {
-                Path context = (Path) event.context();
-                if (context == null) {
-                    continue;
-                }
+        for (WatchKey key : this.watchKeys) {
+            pollEvents(key);
+        }
 
-                Path keyPath = (Path) key.watchable();
-                Path fullPath = keyPath.resolve(context);
-                Path relativePath = directory.relativize(fullPath);
+        // wait until the burst of changes has finished
+        ChangeDebouncer.Batch batch = this.debouncer.drain();
+        if (batch == null) {
+            return;
+        }
+        if (batch.getMergedEvents() != 0) {
+            logger.info("[LOADER] Coalesced " + batch.getMergedEvents() + " duplicate filesystem event(s) into " + batch.getChanges().size() + " change(s)");
+        }
 
-                if (Files.isDirectory(fullPath) && !fullPath.getFileName().toString().equals("New folder")) {
-                    logger.info("[LOADER] New directory detected at: " + relativePath.toString());
-                }
+        // the content of a file is only worth comparing once it has been completely
+        // written. when polling, events are picked up at the next poll, which acts as
+        // a coarse quiet period. otherwise, the quiet period must have passed - without
+        // one, the batch may have been drained part way through a write.
+        boolean compareContent = batch.isSettled() || this.watcher == null;
 
-                // already being loaded / unloaded
-                // soo, just ignore the change
-                if (toLoad.contains(relativePath) || toUnload.stream().anyMatch(s -> s.getPath().equals(relativePath))) {
-                    continue;
-                }
+        for (Map.Entry<Path, WatchEvent.Kind<?>> change : batch.getChanges().entrySet()) {
+            Path relativePath = change.getKey();
 
-                // try delete
-                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
-                    tryUnload.add(relativePath);
-                    continue;
-                }
+            // already being loaded / unloaded
+            // soo, just ignore the change
+            if (toLoad.contains(relativePath) || toUnload.stream().anyMatch(s -> s.getPath().equals(relativePath))) {
+                continue;
+            }
 
-                // otherwise, try (re)load
-                Script script = registry.getScript(relativePath);
-                if (script == null) {
-                    if (this.files.contains(relativePath)) {
-                        toLoad.add(relativePath);
-                    } else {
-                        // add to the reload queue anyways - we want to resolve it's dependencies
-                        toReload.add(relativePath);
-                    }
-                } else {
-                    toReload.add(script.getPath());
-                }
+            // try delete
+            if (change.getValue() == StandardWatchEventKinds.ENTRY_DELETE) {
+                tryUnload.add(relativePath);
+                continue;
             }
 
-            // check if key is still valid
-            boolean valid = key.reset();
-            if (!valid) {
-                logger.warning("[LOADER] Watch key is no longer valid: " + key.watchable().toString());
-                keys.remove();
+            // ignore changes which haven't modified the content of the file
+            if (compareContent && isContentUnchanged(relativePath)) {
+                continue;
+            }
+
+            // otherwise, try (re)load
+            Script script = registry.getScript(relativePath);
+            if (script == null) {
+                if (this.files.containsKey(relativePath)) {
+                    toLoad.add(relativePath);
+                } else {
+                    // add to the reload queue anyways - we want to resolve it's dependencies
+                    toReload.add(relativePath);
+                }
+            } else {
+                toReload.add(script.getPath());
             }
         }
 
@@ -346,6 +516,125 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
         }
     }
 
+    private void checkStale(Set<Path> stale, Set<Path> toLoad, Set<Script> toUnload, Set<Path> toReload) {
+        Path directory = this.environment.getDirectory();
+
+        // modifications to these paths may have been lost, so treat them as
+        // modified unless their content is the same as when last evaluated.
+        for (Path path : stale) {
+            if (toLoad.contains(path) || toReload.contains(path) || toUnload.stream().anyMatch(s -> s.getPath().equals(path))) {
+                continue;
+            }
+
+            // deletions are handled by checkWatched
+            if (!Files.exists(directory.resolve(path)) || isContentUnchanged(path)) {
+                continue;
+            }
+
+            toReload.add(path);
+        }
+    }
+
+    /**
+     * Gets if the content of the file at the given path is the same as when
+     * it was last evaluated.
+     *
+     * @param path the path, relative to the script directory
+     * @return true if the file has been evaluated, and is unchanged since
+     */
+    private boolean isContentUnchanged(Path path) {
+        Path fullPath = this.environment.getDirectory().resolve(path);
+
+        ContentDigest previous = this.environment.getCompiledScriptCache().getDigest(fullPath);
+        if (previous == null) {
+            return false;
+        }
+
+        try {
+            return previous.equals(ContentDigest.of(Files.readAllBytes(fullPath)));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Polls the pending events from a watch key, and records them with the
+     * debouncer.
+     *
+     * @param key the watch key
+     */
+    private void pollEvents(WatchKey key) {
+        Path directory = this.environment.getDirectory();
+        SystemLogger logger = this.environment.getController().getLogger();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // events have been lost, so recheck everything
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                markAllDirty();
+                continue;
+            }
+
+            Path context = (Path) event.context();
+            if (context == null) {
+                continue;
+            }
+
+            Path keyPath = (Path) key.watchable();
+            Path fullPath = keyPath.resolve(context);
+            Path relativePath = directory.relativize(fullPath);
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(fullPath) && !fullPath.getFileName().toString().equals("New folder")) {
+                logger.info("[LOADER] New directory detected at: " + relativePath.toString());
+                registerDirectory(fullPath, relativePath);
+            }
+
+            this.debouncer.record(relativePath, event.kind());
+        }
+
+        // check if key is still valid
+        boolean valid = key.reset();
+        if (!valid) {
+            logger.warning("[LOADER] Watch key is no longer valid: " + key.watchable().toString());
+            this.watchKeys.remove(key);
+            markAllDirty();
+        }
+    }
+
+    /**
+     * Starts watching a directory (and any subdirectories) created after the
+     * loader was initialised.
+     *
+     * <p>Watched paths within the directory may have been created before
+     * the directory was registered, so these are marked as dirty.</p>
+     *
+     * @param fullPath the path of the directory
+     * @param relativePath the path of the directory, relative to the script directory
+     */
+    private void registerDirectory(Path fullPath, Path relativePath) {
+        try (Stream<Path> dirs = Files.walk(fullPath)) {
+            List<Path> directories = dirs.filter(Files::isDirectory).collect(Collectors.toList());
+            for (Path dir : directories) {
+                WatchKey key = dir.register(this.watchService, EVENTS);
+                if (!this.watchKeys.contains(key)) {
+                    this.watchKeys.add(key);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        this.lock.lock();
+        try {
+            for (Path path : this.files.keySet()) {
+                if (path.startsWith(relativePath)) {
+                    this.dirty.add(path);
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
     /**
      * Recursively finds dependencies on a given path.
      *
@@ -357,10 +646,8 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
             return;
         }
 
-        for (Script other : this.environment.getScriptRegistry().getAll().values()) {
-            if (other.getDependencies().contains(path)) {
-                resolveDepends(accumulator, other.getPath());
-            }
+        for (Path dependent : this.dependencyIndex.getDependents(path)) {
+            resolveDepends(accumulator, dependent);
         }
     }
 
@@ -369,6 +656,7 @@ class ScriptLoaderImpl implements EnvironmentScriptLoader {
         this.watchKeys.clear();
         this.watchService.close();
         this.files.clear();
+        this.dependencyIndex.clear();
     }
 
     private static String pathToString(Path path) {
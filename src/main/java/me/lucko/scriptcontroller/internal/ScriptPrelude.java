@@ -0,0 +1,254 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.internal;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * The prelude evaluated in every script context before the script itself.
+ *
+ * <p>The prelude is made up of a header which makes the global scope of the
+ * context visible from the scripts global object (also after evaluation),
+ * the {@link #GLOBAL_SCRIPT_HEADER global header} and the default package/type imports defined by the environment settings,
+ * unless the imports are shared by every script via {@link ImportedTypes}.
+ * It is compiled once per engine, and then evaluated in a single step for
+ * each new script context.</p>
+ */
+final class ScriptPrelude {
+
+    /**
+     * Header which is evaluated before the content of the actual script is
+     * loaded. It...
+     *
+     * Loads the nashorn mozilla_compat script, which provides importClass and
+     * importPackage functions (among other things)
+     *
+     * Redefines the load function to prepend the loader directory, evaluate
+     * the file via the environments compiled script cache, and register
+     * loaded scripts as dependencies
+     */
+    private static final String GLOBAL_SCRIPT_HEADER =
+            /*
+            load("nashorn:mozilla_compat.js");
+            var __load = load;
+            var load = function(file) {
+                __loadCompiled(rsd + file);
+                depend(file);
+            };
+             */
+            "load(\"nashorn:mozilla_compat.js\");\r\n" +
+            "var __load = load;\r\n" +
+            "var load = function(file) {\r\n" +
+            "    __loadCompiled(rsd + file);\r\n" +
+            "    depend(file);\r\n" +
+            "};";
+
+    /**
+     * Header which defines an accessor on the global object for each name in
+     * the global scope of the context, for engines which do not resolve names
+     * from the global scope themselves.
+     *
+     * Each accessor reads the global scope (computing lazy bindings) when the
+     * name is first read, and then replaces itself with the plain value.
+     */
+    private static final String GLOBAL_SCOPE_BRIDGE =
+            /*
+            (function(global, scope, names) {
+                for (var i = 0; i < names.length; i++) (function(name) {
+                    if (name in global) return;
+                    var define = function(value) {
+                        Object.defineProperty(global, name, {value: value, writable: true, enumerable: true, configurable: true});
+                        return value;
+                    };
+                    Object.defineProperty(global, name, {
+                        get: function() { return define(scope.get(name)); },
+                        set: define,
+                        enumerable: true,
+                        configurable: true
+                    });
+                })(names[i]);
+            })(this, __globalScope, __globalNames);
+             */
+            "(function(global, scope, names) {\r\n" +
+            "    for (var i = 0; i < names.length; i++) (function(name) {\r\n" +
+            "        if (name in global) return;\r\n" +
+            "        var define = function(value) {\r\n" +
+            "            Object.defineProperty(global, name, {value: value, writable: true, enumerable: true, configurable: true});\r\n" +
+            "            return value;\r\n" +
+            "        };\r\n" +
+            "        Object.defineProperty(global, name, {\r\n" +
+            "            get: function() { return define(scope.get(name)); },\r\n" +
+            "            set: define,\r\n" +
+            "            enumerable: true,\r\n" +
+            "            configurable: true\r\n" +
+            "        });\r\n" +
+            "    })(names[i]);\r\n" +
+            "})(this, __globalScope, __globalNames);\r\n";
+
+    /**
+     * Header which resolves names which are not defined on the global object
+     * from the global scope of the context, for engines which only read the
+     * global scope themselves whilst a script is being evaluated.
+     *
+     * Without it, functions called after evaluation (listeners, scheduled
+     * tasks, ...) could not see names such as rsd or the static bindings.
+     * Resolved values are cached on the global object, and other names are
+     * passed on to the previous hook.
+     */
+    private static final String GLOBAL_SCOPE_HOOK =
+            /*
+            (function(global, scope) {
+                var previous = global.__noSuchProperty__;
+                Object.defineProperty(global, "__noSuchProperty__", {
+                    value: function(name) {
+                        'use strict';
+                        var value = scope.get(name);
+                        if (value != null) {
+                            global[name] = value;
+                            return value;
+                        }
+                        if (previous) {
+                            return previous.call(this, name);
+                        }
+                        if (this === undefined) {
+                            throw new ReferenceError(name + " is not defined");
+                        }
+                        return undefined;
+                    },
+                    writable: true,
+                    enumerable: false,
+                    configurable: true
+                });
+            })(this, __globalScope);
+             */
+            "(function(global, scope) {\r\n" +
+            "    var previous = global.__noSuchProperty__;\r\n" +
+            "    Object.defineProperty(global, \"__noSuchProperty__\", {\r\n" +
+            "        value: function(name) {\r\n" +
+            "            'use strict';\r\n" +
+            "            var value = scope.get(name);\r\n" +
+            "            if (value != null) {\r\n" +
+            "                global[name] = value;\r\n" +
+            "                return value;\r\n" +
+            "            }\r\n" +
+            "            if (previous) {\r\n" +
+            "                return previous.call(this, name);\r\n" +
+            "            }\r\n" +
+            "            if (this === undefined) {\r\n" +
+            "                throw new ReferenceError(name + \" is not defined\");\r\n" +
+            "            }\r\n" +
+            "            return undefined;\r\n" +
+            "        },\r\n" +
+            "        writable: true,\r\n" +
+            "        enumerable: false,\r\n" +
+            "        configurable: true\r\n" +
+            "    });\r\n" +
+            "})(this, __globalScope);\r\n";
+
+    // functions to import packages / classes
+    private static final Function<String, String> IMPORT_PACKAGE = pkg -> "importPackage(\"" + pkg + "\");";
+    private static final Function<String, String> IMPORT_TYPE = type -> {
+        String name = type.substring(type.lastIndexOf('.') + 1);
+        return "var " + name + " = Java.type(\"" + type + "\");";
+    };
+
+    /** The engines used to compile the prelude */
+    private final ScriptEnginePool engines;
+
+    /** The source of the prelude */
+    private final String source;
+
+    /** The compiled prelude for each engine, lazily initialised */
+    private final AtomicReferenceArray<CompiledScript> compiled;
+
+    /**
+     * Creates the prelude.
+     *
+     * @param engines the engines
+     * @param settings the environment settings
+     * @param sharedImports if the imports are shared through the global scope
+     *                      by {@link ImportedTypes}, rather than imported by
+     *                      each script
+     */
+    ScriptPrelude(ScriptEnginePool engines, EnvironmentSettingsImpl settings, boolean sharedImports) {
+        this.engines = engines;
+        this.compiled = new AtomicReferenceArray<>(engines.size());
+        if (sharedImports) {
+            this.source = buildSource(engines.readsGlobalScope(), Collections.emptySet(), Collections.emptySet());
+        } else {
+            this.source = buildSource(engines.readsGlobalScope(), settings.getPackageImports(), settings.getTypeImports());
+        }
+    }
+
+    private static String buildSource(boolean readsGlobalScope, Set<String> packageImports, Set<String> typeImports) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(readsGlobalScope ? GLOBAL_SCOPE_HOOK : GLOBAL_SCOPE_BRIDGE);
+        sb.append(GLOBAL_SCRIPT_HEADER);
+        for (String packageName : packageImports) {
+            sb.append("\r\n").append(IMPORT_PACKAGE.apply(packageName));
+        }
+        for (String className : typeImports) {
+            sb.append("\r\n").append(IMPORT_TYPE.apply(className));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Evaluates the prelude within the given context.
+     *
+     * @param engineIndex the index of the engine to evaluate with
+     * @param context the context
+     * @throws ScriptException if the prelude could not be compiled or evaluated
+     */
+    public void eval(int engineIndex, ScriptContext context) throws ScriptException {
+        ScriptEngine scriptEngine = this.engines.get(engineIndex);
+        if (!(scriptEngine instanceof Compilable)) {
+            scriptEngine.eval(this.source, context);
+            return;
+        }
+
+        CompiledScript compiled = this.compiled.get(engineIndex);
+        if (compiled == null) {
+            synchronized (this) {
+                compiled = this.compiled.get(engineIndex);
+                if (compiled == null) {
+                    compiled = CompiledScriptCacheImpl.compile(scriptEngine, "prelude", this.source);
+                    this.compiled.set(engineIndex, compiled);
+                }
+            }
+        }
+        compiled.eval(context);
+    }
+}
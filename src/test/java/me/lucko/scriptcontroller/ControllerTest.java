@@ -30,6 +30,7 @@ import com.google.common.io.Resources;
 import me.lucko.scriptcontroller.bindings.BindingsSupplier;
 import me.lucko.scriptcontroller.environment.ScriptEnvironment;
 import me.lucko.scriptcontroller.environment.settings.EnvironmentSettings;
+import me.lucko.scriptcontroller.exports.Export;
 import me.lucko.scriptcontroller.exports.ExportRegistry;
 
 import org.junit.Rule;
@@ -40,10 +41,19 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class ControllerTest {
@@ -79,6 +89,110 @@ public class ControllerTest {
         controller.shutdown();
     }
 
+    @Test
+    public void testExportsKeptAcrossReload() throws Exception {
+        File scripts = this.folder.newFolder("scripts");
+        Path init = scripts.toPath().resolve("init.js");
+        String source = "exports.get(\"loads\").computeIfAbsent(function() { return new java.util.concurrent.atomic.AtomicInteger(); }).get().incrementAndGet();";
+        Files.write(init, source.getBytes(StandardCharsets.UTF_8));
+
+        ScriptController controller = ScriptController.builder()
+                .withDirectory(scripts.toPath())
+                .defaultEnvironmentSettings(EnvironmentSettings.builder()
+                        .pollRate(50, TimeUnit.MILLISECONDS)
+                        .build()
+                )
+                .build();
+
+        // hold on to a resolved handle, and listen to it
+        ExportRegistry exports = controller.getEnvironments().iterator().next().getExportRegistry();
+        Export<AtomicInteger> loads = exports.get("loads");
+        AtomicBoolean notified = new AtomicBoolean(false);
+        loads.subscribe((export, previous, current) -> notified.set(true));
+        assertEquals(1, loads.get().get());
+
+        // reload the script
+        Files.write(init, (source + "\n// changed").getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < 100 && loads.get().get() != 2; i++) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(2, loads.get().get());
+        assertSame(loads, exports.get("loads"));
+
+        loads.put(new AtomicInteger());
+        assertTrue(notified.get());
+
+        controller.shutdown();
+    }
+
+    @Test
+    public void testBindingsVisibleFromCallbacks() throws Exception {
+        File scripts = this.folder.newFolder("scripts");
+        String source = "register(new java.lang.Runnable(function() { exports.get(\"result\").put(value + \" \" + rsd.endsWith(\"/\") + \" \" + sharedLazy + \" \" + scriptLazy + \" \" + new ArrayList().size() + \" \" + TimeUnit.SECONDS); }));";
+        Files.write(scripts.toPath().resolve("init.js"), source.getBytes(StandardCharsets.UTF_8));
+
+        List<Runnable> callbacks = new ArrayList<>();
+        AtomicInteger computed = new AtomicInteger();
+        ScriptController controller = ScriptController.builder()
+                .withDirectory(scripts.toPath())
+                .defaultEnvironmentSettings(EnvironmentSettings.builder()
+                        .withDefaultTypeImport("java.util.ArrayList")
+                        .withDefaultPackageImport("java.util.concurrent")
+                        .withBindings(BindingsSupplier.singleBinding("value", "static"))
+                        .withBindings(BindingsSupplier.singleBinding("register", (Consumer<Runnable>) callbacks::add))
+                        .withBindings(BindingsSupplier.ofStatic(bindings -> bindings.putLazy("sharedLazy", () -> "shared")))
+                        .withBindings((script, bindings) -> bindings.putLazy("scriptLazy", () -> {
+                            computed.incrementAndGet();
+                            return script.getName();
+                        }))
+                        .build()
+                )
+                .build();
+
+        // the callback runs after the script has been evaluated
+        assertEquals(1, callbacks.size());
+        assertEquals(0, computed.get());
+        callbacks.get(0).run();
+
+        ExportRegistry exports = controller.getEnvironments().iterator().next().getExportRegistry();
+        assertEquals("static true shared init 0 SECONDS", exports.get("result").get());
+        assertEquals(1, computed.get());
+
+        controller.shutdown();
+    }
+
+    @Test
+    public void testImportsWithEnginePool() throws Exception {
+        File scripts = this.folder.newFolder("scripts");
+        StringBuilder init = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            init.append("loader.watch(\"script").append(i).append(".js\");\n");
+            String source = "exports.get(\"script" + i + "\").put(new ArrayList().size() + \" \" + TimeUnit.SECONDS);";
+            Files.write(scripts.toPath().resolve("script" + i + ".js"), source.getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(scripts.toPath().resolve("init.js"), init.toString().getBytes(StandardCharsets.UTF_8));
+
+        // each engine resolves the imports used by the scripts pinned to it
+        ScriptController controller = ScriptController.builder()
+                .withDirectory(scripts.toPath())
+                .defaultEnvironmentSettings(EnvironmentSettings.builder()
+                        .withDefaultTypeImport("java.util.ArrayList")
+                        .withDefaultPackageImport("java.util.concurrent")
+                        .enginePoolSize(2)
+                        .preloadParallelism(2)
+                        .build()
+                )
+                .build();
+
+        ExportRegistry exports = controller.getEnvironments().iterator().next().getExportRegistry();
+        for (int i = 0; i < 8; i++) {
+            assertEquals("0 SECONDS", exports.get("script" + i).get());
+        }
+
+        controller.shutdown();
+    }
+
     private static void copyResource(URL in, File out, String name) throws IOException {
         File outFile = new File(out, name);
         try (FileOutputStream outputStream = new FileOutputStream(outFile)) {
@@ -0,0 +1,380 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller;
+
+import me.lucko.scriptcontroller.environment.ScriptEnvironment;
+import me.lucko.scriptcontroller.environment.loader.CompiledScriptCache;
+import me.lucko.scriptcontroller.environment.settings.EnvironmentSettings;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the environment script loader.
+ *
+ * <p>Unless a test enables event driven loading, the loader is only run
+ * when the test calls {@link #cycle()}.</p>
+ */
+public class LoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path scripts;
+    private ScriptController controller;
+    private ScriptEnvironment environment;
+
+    @After
+    public void shutdown() {
+        if (this.controller != null) {
+            this.controller.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompiledScriptCache() throws Exception {
+        this.scripts = this.folder.newFolder("scripts").toPath();
+        write("init.js", "load(\"lib.js\");\n" + counter("init"));
+        write("lib.js", counter("lib"));
+        start(EnvironmentSettings.builder());
+
+        CompiledScriptCache cache = this.environment.getCompiledScriptCache();
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.hitCount());
+        assertEquals(2, cache.missCount());
+
+        // init.js is rerun as a dependent of lib.js, without being compiled again
+        write("lib.js", counter("lib") + "\n// changed");
+        await(() -> runs("lib") == 2);
+        assertEquals(2, runs("init"));
+        assertEquals(1, cache.hitCount());
+        assertEquals(3, cache.missCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCompiledScriptCacheEviction() throws Exception {
+        this.scripts = this.folder.newFolder("scripts").toPath();
+        write("init.js", "load(\"lib.js\");\n" + counter("init"));
+        write("lib.js", counter("lib"));
+        start(EnvironmentSettings.builder().compiledScriptCacheSize(1));
+
+        // lib.js is compiled after init.js, evicting it
+        CompiledScriptCache cache = this.environment.getCompiledScriptCache();
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.evictionCount());
+
+        write("lib.js", counter("lib") + "\n// changed");
+        await(() -> runs("lib") == 2);
+        assertEquals(0, cache.hitCount());
+        assertEquals(4, cache.missCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testDebounceCoalescesChanges() throws Exception {
+        this.scripts = this.folder.newFolder("scripts").toPath();
+        write("init.js", counter("init"));
+        start(EnvironmentSettings.builder().reloadDebounce(300, TimeUnit.MILLISECONDS));
+
+        // a burst of changes, each observed by a separate cycle within the quiet period
+        for (int i = 0; i < 3; i++) {
+            write("init.js", counter("init") + "\nexports.get(\"version\").put(" + i + ");");
+            Thread.sleep(50);
+            cycle();
+        }
+        assertEquals(1, runs("init"));
+
+        // reloaded once, with the final content
+        await(() -> runs("init") == 2);
+        settle();
+        assertEquals(2, runs("init"));
+        assertEquals(2, this.environment.getExportRegistry().<Integer>get("version").get().intValue());
+    }
+
+    @Test
+    public void testDebounceMaxWait() throws Exception {
+        this.scripts = this.folder.newFolder("scripts").toPath();
+        write("init.js", counter("init"));
+        start(EnvironmentSettings.builder().reloadDebounce(100, TimeUnit.MILLISECONDS));
+
+        // changes spaced just under the quiet period, for longer than the maximum wait
+        for (int i = 0; i < 20 && runs("init") == 1; i++) {
+            write("init.js", counter("init") + "\nexports.get(\"version\").put(" + i + ");");
+            Thread.sleep(80);
+            cycle();
+        }
+        assertEquals(2, runs("init"));
+    }
+
+    @Test
+    public void testDependencyCascade() throws Exception {
+        this.scripts = this.folder.newFolder("scripts").toPath();
+        write("init.js", "loader.watch(\"a.js\", \"b.js\", \"c.js\");\n" + counter("init"));
+        write("lib.js", counter("lib"));
+        write("a.js", "load(\"lib.js\");\n" + counter("a"));
+        write("b.js", counter("b"));
+        write("c.js", "depend(\"a.js\");\n" + counter("c"));
+        start(EnvironmentSettings.builder());
+        assertEquals(1, runs("a"));
+
+        // a.js loads lib.js, and c.js depends on a.js
+        write("lib.js", counter("lib") + "\n// changed");
+        await(() -> runs("a") == 2);
+        settle();
+        assertEquals(2, runs("lib"));
+        assertEquals(2, runs("a"));
+        assertEquals(2, runs("c"));
+        assertEquals(1, runs("b"));
+        assertEquals(1, runs("init"));
+
+        // dependencies are recorded again by the reloaded scripts
+        write("lib.js", counter("lib") + "\n// changed again");
+        await(() -> runs("a") == 3);
+        settle();
+        assertEquals(3, runs("c"));
+        assertEquals(1, runs("b"));
+    }
+
+    @Test
+    public void testUnchangedContentSkipped() throws Exception {
+        this.scripts = this.folder.newFolder("scripts").toPath();
+        write("init.js", "loader.watch(\"a.js\");\n" + counter("init"));
+        write("lib.js", counter("lib"));
+        write("a.js", "load(\"lib.js\");\n" + counter("a"));
+        start(EnvironmentSettings.builder());
+
+        // touch the watched script, and its dependency
+        Files.setLastModifiedTime(this.scripts.resolve("a.js"), FileTime.fromMillis(System.currentTimeMillis() + 60000));
+        Files.setLastModifiedTime(this.scripts.resolve("lib.js"), FileTime.fromMillis(System.currentTimeMillis() + 60000));
+        settle();
+
+        // rewrite them with the same content, both in place and by replacing the file
+        Files.write(this.scripts.resolve("a.js"), Files.readAllBytes(this.scripts.resolve("a.js")));
+        write("lib.js", counter("lib"));
+        settle();
+
+        assertEquals(1, runs("init"));
+        assertEquals(1, runs("a"));
+        assertEquals(1, runs("lib"));
+
+        // a change to the content is still picked up
+        write("lib.js", counter("lib") + "\n// changed");
+        await(() -> runs("a") == 2);
+        assertEquals(1, runs("init"));
+    }
+
+    @Test
+    public void testWatchedPathRechecks() throws Exception {
+        this.scripts = this.folder.newFolder("scripts").toPath();
+        write("init.js", "loader.watch(\"a.js\", \"sub/b.js\");\n" + counter("init"));
+        start(EnvironmentSettings.builder());
+        assertFalse(isLoaded("a.js"));
+
+        // watched scripts are loaded once they're created, including in new directories
+        write("a.js", counter("a"));
+        write("sub/b.js", counter("b"));
+        await(() -> isLoaded("a.js") && isLoaded("sub/b.js"));
+
+        // the reloaded init script watches a.js again, but no longer watches sub/b.js
+        write("init.js", "loader.watch(\"a.js\");\n" + counter("init"));
+        await(() -> !isLoaded("sub/b.js"));
+        settle();
+        assertEquals(2, runs("init"));
+        assertEquals(1, runs("a"));
+        assertTrue(isLoaded("a.js"));
+
+        // deleting a watched script unloads it
+        Files.delete(this.scripts.resolve("a.js"));
+        await(() -> !isLoaded("a.js"));
+    }
+
+    @Test
+    public void testSharedWatchReferenceCounted() throws Exception {
+        this.scripts = this.folder.newFolder("scripts").toPath();
+        write("init.js", "loader.watch(\"x.js\", \"y.js\");");
+        write("x.js", "loader.watch(\"shared.js\");");
+        write("y.js", "loader.watch(\"shared.js\");");
+        write("shared.js", counter("shared"));
+        start(EnvironmentSettings.builder());
+        assertTrue(isLoaded("shared.js"));
+
+        // unloading x.js closes its loader, but y.js still watches shared.js
+        Files.delete(this.scripts.resolve("x.js"));
+        await(() -> !isLoaded("x.js"));
+        settle();
+        assertTrue(isLoaded("shared.js"));
+        assertEquals(1, runs("shared"));
+
+        // once the last watcher is gone, shared.js is unloaded
+        Files.delete(this.scripts.resolve("y.js"));
+        await(() -> !isLoaded("shared.js"));
+    }
+
+    @Test
+    public void testEventDrivenIdenticalRewrites() throws Exception {
+        this.scripts = this.folder.newFolder("scripts").toPath();
+        write("init.js", "loader.watch(\"marker.js\");\n" + counter("init"));
+        write("marker.js", counter("marker"));
+        start(EnvironmentSettings.builder().eventDrivenLoading(true));
+
+        // rewrite the file in place with the same content
+        byte[] content = Files.readAllBytes(this.scripts.resolve("init.js"));
+        for (int i = 0; i < 5; i++) {
+            Files.write(this.scripts.resolve("init.js"), content);
+        }
+
+        // once a later change has been picked up, the rewrites have been handled
+        write("marker.js", counter("marker") + "\n// changed");
+        awaitWatcher(() -> runs("marker") == 2);
+        assertEquals(1, runs("init"));
+
+        // a real change is still picked up
+        write("init.js", "loader.watch(\"marker.js\");\n" + counter("init") + "\n// changed");
+        awaitWatcher(() -> runs("init") == 2);
+    }
+
+    /**
+     * Starts a controller for the script directory, which runs scripts on
+     * the loading thread, and unless loading is event driven, only polls
+     * when {@link #cycle()} is called.
+     *
+     * @param settings the settings
+     */
+    private void start(EnvironmentSettings.Builder settings) {
+        this.controller = ScriptController.builder()
+                .withDirectory(this.scripts)
+                .defaultEnvironmentSettings(settings
+                        .pollRate(1, TimeUnit.HOURS)
+                        .runExecutor(Runnable::run)
+                        .build()
+                )
+                .build();
+        this.environment = this.controller.getEnvironments().iterator().next();
+    }
+
+    /**
+     * Runs a single cycle of the loader.
+     */
+    private void cycle() {
+        this.environment.getLoader().run();
+    }
+
+    /**
+     * Runs the loader until the condition is met, failing if it isn't met
+     * within a few seconds.
+     *
+     * @param condition the condition
+     * @throws InterruptedException if interrupted
+     */
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 250 && !condition.getAsBoolean(); i++) {
+            cycle();
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    /**
+     * Waits until the condition is met, without running the loader, failing
+     * if it isn't met within a few seconds.
+     *
+     * <p>Used when loading is event driven, so the loader is run by the
+     * filesystem watcher.</p>
+     *
+     * @param condition the condition
+     * @throws InterruptedException if interrupted
+     */
+    private void awaitWatcher(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 250 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    /**
+     * Runs the loader for long enough for any pending filesystem events to
+     * have been handled.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    private void settle() throws InterruptedException {
+        for (int i = 0; i < 25; i++) {
+            cycle();
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Writes a script, by moving a complete file into place, so the loader
+     * never observes it half written.
+     *
+     * @param name the name of the script
+     * @param content the content
+     * @throws IOException if an io error occurs
+     */
+    private void write(String name, String content) throws IOException {
+        Path path = this.scripts.resolve(name);
+        Files.createDirectories(path.getParent());
+        Path tmp = Files.write(this.folder.newFile().toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Gets the source of a statement which counts the runs of a script.
+     *
+     * @param name the name of the counter
+     * @return the source
+     */
+    private static String counter(String name) {
+        return "exports.getLong(\"runs." + name + "\").increment();";
+    }
+
+    private boolean isLoaded(String name) {
+        return this.environment.getScriptRegistry().getScript(Paths.get(name)) != null;
+    }
+
+    private long runs(String name) {
+        return this.environment.getExportRegistry().getLong("runs." + name).sum();
+    }
+
+}
@@ -0,0 +1,439 @@
+/*
+ * This file is part of ScriptController, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.scriptcontroller.exports;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPointer() {
+        ExportRegistry registry = ExportRegistry.create();
+        Export.Pointer<String> pointer = registry.pointer("Test");
+
+        registry.<String>get("test").put("Hello world");
+        assertEquals("Hello world", pointer.get());
+        assertSame(pointer, registry.get("TEST").pointer());
+    }
+
+    @Test
+    public void testComputeIfAbsent() {
+        Export<Integer> export = ExportRegistry.create().get("test");
+        AtomicInteger calls = new AtomicInteger();
+
+        export.computeIfAbsent(calls::incrementAndGet);
+        export.computeIfAbsent(calls::incrementAndGet);
+        assertEquals(1, calls.get());
+        assertEquals(Integer.valueOf(1), export.get());
+    }
+
+    @Test
+    public void testSubscribe() throws Exception {
+        ExportRegistry registry = ExportRegistry.create();
+        Export<String> export = registry.get("test");
+
+        List<String> changes = new ArrayList<>();
+        AutoCloseable subscription = export.subscribe((e, previous, current) -> changes.add(previous + "->" + current));
+        AutoCloseable registrySubscription = registry.subscribe((e, previous, current) -> changes.add(e.name() + ":" + current));
+
+        export.put("a");
+        export.putIfAbsent("b");
+        export.clear();
+        export.computeIfAbsent(() -> "c");
+
+        subscription.close();
+        registrySubscription.close();
+        export.put("d");
+
+        assertEquals(6, changes.size());
+        assertEquals("null->a", changes.get(0));
+        assertEquals("test:a", changes.get(1));
+        assertEquals("a->null", changes.get(2));
+        assertEquals("test:null", changes.get(3));
+        assertEquals("null->c", changes.get(4));
+        assertEquals("test:c", changes.get(5));
+    }
+
+    @Test
+    public void testCompareAndSet() {
+        Export<Integer> export = ExportRegistry.create().get("test");
+
+        assertTrue(export.compareAndSet(null, 1));
+        assertFalse(export.compareAndSet(null, 2));
+        assertTrue(export.compareAndSet(1, 3));
+        assertEquals(Integer.valueOf(3), export.get());
+    }
+
+    @Test
+    public void testStamp() throws Exception {
+        Export<Integer> export = ExportRegistry.create().get("test");
+        assertEquals(0, export.stamp());
+
+        export.put(1);
+        export.putIfAbsent(2);
+        Export.Stamped<Integer> stamped = export.getStamped();
+        assertEquals(Integer.valueOf(1), stamped.value());
+        assertEquals(1, stamped.stamp());
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    export.update(v -> v + 1);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(Integer.valueOf(4001), export.get());
+        assertEquals(4001, export.stamp());
+    }
+
+    @Test
+    public void testNumericExports() throws Exception {
+        ExportRegistry registry = ExportRegistry.create();
+        LongExport counter = registry.getLong("Counter");
+        assertSame(counter, registry.getLong("counter"));
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    counter.increment();
+                    registry.getDouble("gauge").add(0.5);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(4000, counter.sum());
+        assertEquals(2000, registry.getDouble("gauge").sum(), 0);
+
+        registry.remove("counter");
+        assertEquals(0, counter.sum());
+    }
+
+    @Test
+    public void testGaugesAndAccumulators() throws Exception {
+        ExportRegistry registry = ExportRegistry.create();
+
+        LongGauge players = registry.getLongGauge("players");
+        assertSame(players, registry.getLongGauge("Players"));
+        players.set(10);
+        assertEquals(10, players.getAndSet(12));
+        assertFalse(players.compareAndSet(10, 11));
+        assertTrue(players.compareAndSet(12, 11));
+        assertEquals(13, players.addAndGet(2));
+
+        DoubleGauge tps = registry.getDoubleGauge("tps");
+        tps.set(19.5);
+        assertEquals(19.5, tps.get(), 0);
+        assertTrue(tps.compareAndSet(19.5, 20));
+        assertEquals(10, tps.update(value -> value / 2), 0);
+
+        LongExport max = registry.getLong("max", Math::max, Long.MIN_VALUE);
+        assertSame(max, registry.getLong("max"));
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            int offset = i;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    max.accumulate(j * threads.length + offset);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(3999, max.sum());
+        assertEquals(3999, max.sumThenReset());
+        assertEquals(Long.MIN_VALUE, max.sum());
+
+        DoubleExport min = registry.getDouble("min", Math::min, Double.POSITIVE_INFINITY);
+        min.accumulate(2.5);
+        min.accumulate(1.5);
+        assertEquals(1.5, min.sum(), 0);
+
+        registry.remove("players");
+        assertEquals(0, players.get());
+    }
+
+    @Test
+    public void testNamespaces() {
+        ExportRegistry registry = ExportRegistry.create();
+        ExportRegistry economy = registry.namespace("Economy");
+
+        Export<String> balance = economy.get("balance");
+        balance.put("100");
+        economy.namespace("bank").get("vault").put("1000");
+        registry.get("economyless").put("x");
+
+        assertSame(balance, registry.get("economy.balance"));
+        assertEquals(2, economy.getAll().size());
+        assertEquals(2, registry.getAll("economy.").size());
+        assertEquals(3, registry.getAll("economy").size());
+
+        registry.removeNamespace("economy");
+        assertNull(balance.get());
+        assertEquals(1, registry.getAll("economy").size());
+        assertNotSame(balance, economy.get("balance"));
+        assertEquals("x", registry.get("economyless").get());
+    }
+
+    @Test
+    public void testOwnership() {
+        ExportRegistry registry = ExportRegistry.create();
+        Export<String> shared = registry.ownedBy("a").get("shared");
+        registry.ownedBy("b").get("shared");
+        registry.ownedBy("a").namespace("a").get("private").put("x");
+        shared.put("hello");
+
+        registry.release("a");
+        assertEquals("hello", shared.get());
+        assertNull(registry.get("a.private").get());
+
+        registry.release("b");
+        assertNull(shared.get());
+        assertTrue(registry.getAll("shared").isEmpty());
+
+        // exports obtained directly from the registry are kept
+        Export<String> pinned = registry.get("pinned");
+        registry.ownedBy("a").get("pinned").put("x");
+        registry.release("a");
+        assertNull(pinned.get());
+        assertSame(pinned, registry.get("pinned"));
+    }
+
+    @Test
+    public void testReleaseUnsubscribes() throws Exception {
+        ExportRegistry registry = ExportRegistry.create();
+        AtomicInteger calls = new AtomicInteger();
+
+        // a script which subscribes on every load, and keeps its exports across reloads
+        for (int i = 0; i < 3; i++) {
+            ExportRegistry owned = registry.ownedBy("script");
+            owned.get("value").subscribe((export, previous, current) -> calls.incrementAndGet());
+            owned.subscribe((export, previous, current) -> calls.incrementAndGet());
+            owned.close();
+        }
+        registry.get("value").put("x");
+        assertEquals(0, calls.get());
+
+        // and the same through an owned view of a namespace
+        ExportRegistry namespaced = registry.namespace("other").ownedBy("script");
+        namespaced.get("value").subscribe((export, previous, current) -> calls.incrementAndGet());
+        namespaced.subscribe((export, previous, current) -> calls.incrementAndGet());
+        namespaced.close();
+        registry.get("other.value").put("x");
+        assertEquals(0, calls.get());
+
+        ExportRegistry owned = registry.ownedBy("script");
+        owned.namespace("ns").get("value").subscribe((export, previous, current) -> calls.incrementAndGet());
+        registry.get("ns.value").put("x");
+        assertEquals(1, calls.get());
+
+        registry.release("script");
+        registry.get("ns.value").put("y");
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testReleaseNotifiesOutsideLock() throws Exception {
+        ExportRegistry registry = ExportRegistry.create();
+        registry.ownedBy("a").get("value").put("x");
+
+        // a listener which waits for another thread to use the registry
+        AtomicBoolean completed = new AtomicBoolean(false);
+        registry.subscribe((export, previous, current) -> {
+            if (!export.name().equals("value")) {
+                return;
+            }
+            Thread thread = new Thread(() -> registry.ownedBy("b").get("other").put("y"));
+            thread.start();
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            completed.set(!thread.isAlive());
+        }, Runnable::run);
+
+        registry.release("a");
+        assertTrue(completed.get());
+        assertEquals("y", registry.get("other").get());
+    }
+
+    @Test
+    public void testNameLocale() {
+        ExportRegistry turkish = ExportRegistry.create(new Locale("tr"));
+        assertNotSame(turkish.get("TITLE"), turkish.get("title"));
+
+        ExportRegistry root = ExportRegistry.create(Locale.ROOT);
+        assertSame(root.get("TITLE"), root.get("title"));
+        assertSame(root.get("Title"), root.get("tItLe"));
+    }
+
+    @Test
+    public void testMapped() throws Exception {
+        Path file = this.folder.newFile("exports.dat").toPath();
+        try (ExportRegistry registry = ExportRegistry.createMapped(file, 64)) {
+            registry.get("Name").put("hello");
+            registry.get("count").put(1);
+            registry.getLong("hits").add(5);
+            registry.getLongGauge("players").set(7);
+
+            // increment concurrently with another process
+            Process child = new ProcessBuilder(
+                    Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    MappedChild.class.getName(), file.toString()
+            ).inheritIO().start();
+            for (int i = 0; i < MappedChild.INCREMENTS; i++) {
+                registry.getLong("hits").increment();
+            }
+            assertEquals(0, child.waitFor());
+
+            assertEquals(5 + 2 * MappedChild.INCREMENTS, registry.getLong("hits").sum());
+            assertEquals("child", registry.get("name").get());
+            assertEquals(Integer.valueOf(2), registry.get("count").get());
+            assertTrue(registry.<Integer>get("count").compareAndSet(2, 3));
+            assertEquals(3, registry.get("count").stamp());
+            assertEquals(7, registry.getLongGauge("players").get());
+            assertEquals(4, registry.getAll().size());
+
+            // a fresh accumulator starts from its identity, not 0
+            LongExport max = registry.getLong("max", Math::max, Long.MIN_VALUE);
+            assertEquals(Long.MIN_VALUE, max.sum());
+            max.accumulate(-5);
+            assertEquals(-5, max.sum());
+            DoubleExport min = registry.getDouble("min", Math::min, Double.POSITIVE_INFINITY);
+            min.accumulate(2.5);
+            assertEquals(2.5, min.sum(), 0);
+        }
+
+        // reopened once closed
+        try (ExportRegistry registry = ExportRegistry.createMapped(file, 64)) {
+            assertEquals(Integer.valueOf(3), registry.get("count").get());
+        }
+    }
+
+    /**
+     * Uses a mapped registry from a separate process, for {@link #testMapped()}.
+     */
+    public static final class MappedChild {
+        static final int INCREMENTS = 10000;
+
+        public static void main(String[] args) throws Exception {
+            try (ExportRegistry registry = ExportRegistry.createMapped(Paths.get(args[0]), 64)) {
+                for (int i = 0; i < INCREMENTS; i++) {
+                    registry.getLong("hits").increment();
+                }
+                registry.get("name").put("child");
+                if (!registry.<Integer>get("count").compareAndSet(1, 2)) {
+                    System.exit(1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        Path file = this.folder.getRoot().toPath().resolve("snapshot.dat");
+
+        ExportRegistry registry = ExportRegistry.create();
+        registry.get("int").put(1);
+        registry.get("string").put("hello");
+        registry.get("map").put(new HashMap<>(Collections.singletonMap("a", "b")));
+        registry.get("unserializable").put(new Object());
+        registry.get("disallowed").put(new AtomicInteger(1));
+        registry.getLong("counter").add(10);
+        registry.namespace("ns").get("value").put(2.5);
+        registry.namespace("ns").getLong("hits").add(3);
+        registry.getDoubleGauge("tps").set(19.5);
+        registry.getLong("max", Math::max, Long.MIN_VALUE).accumulate(-5);
+        registry.snapshot(file);
+
+        ExportRegistry restored = ExportRegistry.create();
+        assertEquals(8, restored.restore(file));
+        assertEquals(Integer.valueOf(1), restored.get("int").get());
+        assertEquals("hello", restored.get("string").get());
+        assertEquals(Collections.singletonMap("a", "b"), restored.get("map").get());
+        assertNull(restored.get("unserializable").get());
+        assertNull(restored.get("disallowed").get());
+        assertEquals(10, restored.getLong("counter").sum());
+        assertEquals(19.5, restored.getDoubleGauge("tps").get(), 0);
+        assertEquals(2.5, restored.namespace("ns").<Double>get("value").get(), 0);
+
+        // the accumulator is created with its function when first obtained
+        LongExport max = restored.getLong("max", Math::max, Long.MIN_VALUE);
+        assertEquals(-5, max.sum());
+        max.accumulate(-10);
+        assertEquals(-5, max.sum());
+
+        // restored exports aren't pinned, so are removed when their owner is released
+        ExportRegistry released = ExportRegistry.create();
+        assertEquals(8, released.ownedBy("script").restore(file));
+        released.release("script");
+        assertTrue(released.getAll().isEmpty());
+        assertEquals(0, released.getLong("counter").sum());
+
+        registry.namespace("ns").snapshot(file);
+        ExportRegistry other = ExportRegistry.create();
+        assertEquals(2, other.namespace("other").restore(file));
+        assertEquals(2.5, other.<Double>get("other.value").get(), 0);
+        assertEquals(3, other.getLong("other.hits").sum());
+    }
+
+}